@@ -0,0 +1,84 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lanchon.dexpatcher.core.util.CompactLinkedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Replays the map operations that AbstractPatcher.process() performs for one member set.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompactLinkedMapBenchmark {
+
+	@Param({ "1", "10", "100", "1000", "5000" })
+	public int members;
+
+	@Param({ "20" })
+	public int patchInterval;
+
+	@Param({ "false", "true" })
+	public boolean compact;
+
+	private String[] sourceIds;
+	private String[] patchIds;
+
+	@Setup
+	public void setup() {
+		sourceIds = new String[members];
+		for (int i = 0; i < members; i++) sourceIds[i] = "m" + i + ".()V";
+		int patches = (members + patchInterval - 1) / patchInterval;
+		patchIds = new String[patches];
+		for (int i = 0; i < patches; i++) patchIds[i] = sourceIds[i * patchInterval];
+	}
+
+	private <V> Map<String, V> createMap(int expectedSize) {
+		return compact ? new CompactLinkedMap<String, V>(expectedSize) : new LinkedHashMap<String, V>(expectedSize);
+	}
+
+	@Benchmark
+	public void process(Blackhole blackhole) {
+		Map<String, String> sourceMap = createMap(sourceIds.length + patchIds.length);
+		Map<String, Boolean> targetedMap = createMap(patchIds.length);
+		Map<String, String> patchedMap = createMap(patchIds.length);
+		for (String id : sourceIds) sourceMap.put(id, id);
+		for (int i = 0; i < patchIds.length; i++) {
+			String id = patchIds[i];
+			blackhole.consume(sourceMap.get(id));
+			targetedMap.put(id, Boolean.TRUE);
+			// Edit every other target and remove the rest.
+			if ((i & 1) == 0) patchedMap.put(id, id);
+		}
+		for (Map.Entry<String, Boolean> entry : targetedMap.entrySet()) {
+			String id = entry.getKey();
+			if (patchedMap.get(id) == null) sourceMap.remove(id);
+			else sourceMap.put(id, null);
+		}
+		for (Map.Entry<String, String> entry : patchedMap.entrySet()) {
+			sourceMap.put(entry.getKey(), entry.getValue());
+		}
+		for (String value : sourceMap.values()) blackhole.consume(value);
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import lanchon.dexpatcher.core.logger.BasicLogger;
+import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.transform.mapper.DexMapperModule;
+import lanchon.dexpatcher.transform.mapper.MapFileReader;
+import lanchon.dexpatcher.transform.mapper.map.CompactDexMap;
+import lanchon.dexpatcher.transform.mapper.map.DexMap;
+import lanchon.dexpatcher.transform.mapper.map.builder.DexMapping;
+import lanchon.dexpatcher.transform.util.DexVisitor;
+
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.dexlib2.rewriter.DexRewriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DexMapperBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int classes;
+
+	@Param({ "8" })
+	public int members;
+
+	@Param({ "false", "true" })
+	public boolean compact;
+
+	private DexFile sourceDex;
+	private DexMap dexMap;
+
+	@Setup
+	public void setup() throws IOException {
+		sourceDex = SyntheticDex.createSourceDex(classes, members, members);
+		DexMapping dexMapping = new DexMapping();
+		Logger logger = new BasicLogger();
+		logger.setLogLevel(Logger.Level.NONE);
+		MapFileReader.read(new StringReader(SyntheticDex.createMapFile(classes, members, members)), "bench",
+				dexMapping, logger);
+		dexMap = compact ? new CompactDexMap(dexMapping) : dexMapping;
+	}
+
+	@Benchmark
+	public DexFile rewrite() {
+		DexFile mappedDex = new DexRewriter(new DexMapperModule(dexMap)).rewriteDexFile(sourceDex);
+		// Rewritten views are lazy; visit them like a pre-transform stage would.
+		new DexVisitor().visitDexFile(mappedDex);
+		return mappedDex;
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import lanchon.dexpatcher.transform.codec.StringCodec;
+import lanchon.dexpatcher.transform.codec.encoder.EncoderConfiguration;
+import lanchon.dexpatcher.transform.codec.encoder.EncoderDexMap;
+
+import org.jf.dexlib2.iface.DexFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EncoderDexMapBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int classes;
+
+	@Param({ "8" })
+	public int members;
+
+	private DexFile sourceDex;
+	private List<String> types;
+	private EncoderConfiguration configuration;
+	private EncoderDexMap encoderDexMap;
+
+	@Setup
+	public void setup() {
+		sourceDex = SyntheticDex.createSourceDex(classes, members, members);
+		types = SyntheticDex.getTypes(classes);
+		configuration = new EncoderConfiguration();
+		// Treat every tenth class as obfuscated.
+		configuration.obfuscatedClassNamePattern = Pattern.compile("C\\d*0");
+		configuration.encodeObfuscatedClasses = true;
+		configuration.encodeTypeHintsInClasses = true;
+		encoderDexMap = createEncoderDexMap();
+	}
+
+	private EncoderDexMap createEncoderDexMap() {
+		return new EncoderDexMap(sourceDex, StringCodec.DEFAULT_CODE_MARKER, null, configuration);
+	}
+
+	@Benchmark
+	public EncoderDexMap create() {
+		return createEncoderDexMap();
+	}
+
+	@Benchmark
+	public void getClassMapping(Blackhole blackhole) {
+		for (String type : types) blackhole.consume(encoderDexMap.getClassMapping(type));
+	}
+
+}
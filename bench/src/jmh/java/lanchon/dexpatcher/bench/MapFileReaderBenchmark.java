@@ -0,0 +1,58 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import lanchon.dexpatcher.core.logger.BasicLogger;
+import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.transform.mapper.MapFileReader;
+import lanchon.dexpatcher.transform.mapper.map.builder.DexMapping;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MapFileReaderBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int classes;
+
+	@Param({ "8" })
+	public int members;
+
+	private String mapFile;
+	private Logger logger;
+
+	@Setup
+	public void setup() {
+		mapFile = SyntheticDex.createMapFile(classes, members, members);
+		logger = new BasicLogger();
+		logger.setLogLevel(Logger.Level.NONE);
+	}
+
+	@Benchmark
+	public DexMapping read() throws IOException {
+		DexMapping dexMapping = new DexMapping();
+		MapFileReader.read(new StringReader(mapFile), "bench", dexMapping, logger);
+		return dexMapping;
+	}
+
+}
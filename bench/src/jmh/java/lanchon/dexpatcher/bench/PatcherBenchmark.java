@@ -0,0 +1,65 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import lanchon.dexpatcher.core.Context;
+import lanchon.dexpatcher.core.DexPatcher;
+import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.transform.util.DexVisitor;
+
+import org.jf.dexlib2.iface.DexFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PatcherBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int classes;
+
+	@Param({ "8" })
+	public int members;
+
+	@Param({ "20" })
+	public int patchInterval;
+
+	@Param({ "1" })
+	public int patchJobs;
+
+	private DexFile sourceDex;
+	private DexFile patchDex;
+	private Context context;
+
+	@Setup
+	public void setup() {
+		sourceDex = SyntheticDex.createSourceDex(classes, members, members);
+		patchDex = SyntheticDex.createPatchDex(classes, members, patchInterval);
+		context = new Context.Builder(Logger.Level.NONE).setPatchJobs(patchJobs).build();
+	}
+
+	@Benchmark
+	public DexFile process() {
+		DexFile patchedDex = DexPatcher.process(context, sourceDex, patchDex);
+		// Patched classes are partly lazy; visit them like the writer would.
+		new DexVisitor().visitDexFile(patchedDex);
+		return patchedDex;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lanchon.dexpatcher.transform.codec.StringCodec;
+import lanchon.dexpatcher.transform.codec.decoder.StringDecoder;
+import lanchon.dexpatcher.transform.codec.encoder.BasicStringEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StringCodecBenchmark {
+
+	@Param({ "10000" })
+	public int strings;
+
+	// Percentage of strings that contain code markers.
+	@Param({ "10" })
+	public int codedPercentage;
+
+	private List<String> decoderInput;
+	private List<String> encoderInput;
+	private StringDecoder decoder;
+	private BasicStringEncoder encoder;
+
+	@Setup
+	public void setup() {
+		String marker = StringCodec.DEFAULT_CODE_MARKER;
+		decoderInput = new ArrayList<>(strings);
+		encoderInput = new ArrayList<>(strings);
+		for (int i = 0; i < strings; i++) {
+			boolean coded = (i % 100) < codedPercentage;
+			decoderInput.add(coded ? "__label" + i + marker + "name$S" + i + "__" : "plainName" + i);
+			encoderInput.add(coded ? "name" + marker + i : "plainName" + i);
+		}
+		decoder = new StringDecoder(marker);
+		encoder = new BasicStringEncoder(marker);
+	}
+
+	@Benchmark
+	public void decodeString(Blackhole blackhole) {
+		for (String string : decoderInput) blackhole.consume(decoder.decodeString(string));
+	}
+
+	@Benchmark
+	public void encodeString(Blackhole blackhole) {
+		for (String string : encoderInput) blackhole.consume(encoder.encodeString(string));
+	}
+
+}
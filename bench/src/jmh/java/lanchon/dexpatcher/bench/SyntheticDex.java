@@ -0,0 +1,152 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import lanchon.dexpatcher.core.Context;
+
+import org.jf.dexlib2.AccessFlags;
+import org.jf.dexlib2.AnnotationVisibility;
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.iface.Annotation;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.immutable.ImmutableAnnotation;
+import org.jf.dexlib2.immutable.ImmutableClassDef;
+import org.jf.dexlib2.immutable.ImmutableDexFile;
+import org.jf.dexlib2.immutable.ImmutableField;
+import org.jf.dexlib2.immutable.ImmutableMethod;
+import org.jf.dexlib2.immutable.ImmutableMethodImplementation;
+import org.jf.dexlib2.immutable.ImmutableMethodParameter;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction10x;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction21c;
+import org.jf.dexlib2.immutable.reference.ImmutableFieldReference;
+
+// Generates in-memory dex files and matching map files of configurable size.
+// Classes are spread over packages and every second class has an anonymous
+// inner class. Members reference the next class so that rewriters have work to do.
+
+public final class SyntheticDex {
+
+	public static final int CLASSES_PER_PACKAGE = 64;
+
+	private static final String ANNOTATION_PREFIX = 'L' + Context.DEFAULT_ANNOTATION_PACKAGE.replace('.', '/') + '/';
+	private static final String DEX_EDIT = ANNOTATION_PREFIX + "DexEdit;";
+	private static final String DEX_REPLACE = ANNOTATION_PREFIX + "DexReplace;";
+	private static final String DEX_ADD = ANNOTATION_PREFIX + "DexAdd;";
+
+	public static String getClassName(int index) {
+		return String.format(Locale.ROOT, "bench.p%d.C%d", index / CLASSES_PER_PACKAGE, index);
+	}
+
+	public static String getAnonymousClassName(int index) {
+		return getClassName(index) + "$1";
+	}
+
+	public static String getDescriptor(String className) {
+		return 'L' + className.replace('.', '/') + ';';
+	}
+
+	public static List<String> getTypes(int classes) {
+		List<String> types = new ArrayList<>(classes + classes / 2);
+		for (int i = 0; i < classes; i++) {
+			types.add(getDescriptor(getClassName(i)));
+			if (i % 2 == 0) types.add(getDescriptor(getAnonymousClassName(i)));
+		}
+		return types;
+	}
+
+	public static DexFile createSourceDex(int classes, int fields, int methods) {
+		List<ClassDef> classDefs = new ArrayList<>(classes + classes / 2);
+		for (int i = 0; i < classes; i++) {
+			String next = getDescriptor(getClassName((i + 1) % classes));
+			classDefs.add(createClass(getDescriptor(getClassName(i)), next, fields, methods));
+			if (i % 2 == 0) {
+				classDefs.add(createClass(getDescriptor(getAnonymousClassName(i)), next, 1, 1));
+			}
+		}
+		return new ImmutableDexFile(Opcodes.getDefault(), classDefs);
+	}
+
+	// Edits every 'patchInterval'-th class of the source: replaces its first method and adds a new one.
+	public static DexFile createPatchDex(int classes, int methods, int patchInterval) {
+		List<ClassDef> classDefs = new ArrayList<>();
+		for (int i = 0; i < classes; i += patchInterval) {
+			String next = getDescriptor(getClassName((i + 1) % classes));
+			String type = getDescriptor(getClassName(i));
+			List<Method> patchMethods = new ArrayList<>(2);
+			if (methods > 0) patchMethods.add(createMethod(type, "m0", next, annotations(DEX_REPLACE)));
+			patchMethods.add(createMethod(type, "added", next, annotations(DEX_ADD)));
+			classDefs.add(new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null,
+					null, annotations(DEX_EDIT), Collections.<Field>emptyList(), patchMethods));
+		}
+		return new ImmutableDexFile(Opcodes.getDefault(), classDefs);
+	}
+
+	public static String createMapFile(int classes, int fields, int methods) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < classes; i++) {
+			String name = getClassName(i);
+			String next = getClassName((i + 1) % classes);
+			sb.append(name).append(" -> ").append(name.replace(".C", ".M")).append(":\n");
+			for (int j = 0; j < fields; j++) {
+				sb.append("    ").append(next).append(" f").append(j).append(" -> g").append(j).append('\n');
+			}
+			for (int j = 0; j < methods; j++) {
+				sb.append("    void m").append(j).append('(').append(next).append(", int) -> n").append(j).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private static ClassDef createClass(String type, String next, int fields, int methods) {
+		List<Field> fieldList = new ArrayList<>(fields);
+		for (int j = 0; j < fields; j++) {
+			fieldList.add(new ImmutableField(type, "f" + j, next, AccessFlags.PUBLIC.getValue() |
+					AccessFlags.STATIC.getValue(), null, null));
+		}
+		List<Method> methodList = new ArrayList<>(methods);
+		for (int j = 0; j < methods; j++) {
+			methodList.add(createMethod(type, "m" + j, next, null));
+		}
+		return new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null, null,
+				null, fieldList, methodList);
+	}
+
+	private static Method createMethod(String type, String name, String next, Set<Annotation> annotations) {
+		List<ImmutableMethodParameter> parameters = new ArrayList<>(2);
+		parameters.add(new ImmutableMethodParameter(next, null, null));
+		parameters.add(new ImmutableMethodParameter("I", null, null));
+		List<Instruction> instructions = new ArrayList<>(2);
+		instructions.add(new ImmutableInstruction21c(Opcode.SGET_OBJECT, 0,
+				new ImmutableFieldReference(next, "f0", next)));
+		instructions.add(new ImmutableInstruction10x(Opcode.RETURN_VOID));
+		ImmutableMethodImplementation implementation = new ImmutableMethodImplementation(4, instructions, null, null);
+		return new ImmutableMethod(type, name, parameters, "V", AccessFlags.PUBLIC.getValue(), annotations,
+				implementation);
+	}
+
+	private static Set<Annotation> annotations(String type) {
+		return Collections.<Annotation>singleton(new ImmutableAnnotation(AnnotationVisibility.BUILD, type, null));
+	}
+
+	private SyntheticDex() {}
+
+}
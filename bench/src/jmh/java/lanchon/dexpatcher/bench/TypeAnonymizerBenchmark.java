@@ -0,0 +1,61 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+package lanchon.dexpatcher.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lanchon.dexpatcher.transform.anonymizer.TypeAnonymizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TypeAnonymizerBenchmark {
+
+	@Param({ "10000" })
+	public int classes;
+
+	private List<String> types;
+	private List<String> deanonymizedTypes;
+	private TypeAnonymizer deanonymizer;
+	private TypeAnonymizer reanonymizer;
+
+	@Setup
+	public void setup() {
+		types = SyntheticDex.getTypes(classes);
+		String plan = TypeAnonymizer.DEFAULT_MAIN_ANONYMIZATION_PLAN;
+		deanonymizer = new TypeAnonymizer(plan, false);
+		reanonymizer = new TypeAnonymizer(plan, true);
+		deanonymizedTypes = new ArrayList<>(types.size());
+		for (String type : types) deanonymizedTypes.add(deanonymizer.anonymizeType(type));
+	}
+
+	@Benchmark
+	public void deanonymize(Blackhole blackhole) {
+		for (String type : types) blackhole.consume(deanonymizer.anonymizeType(type));
+	}
+
+	@Benchmark
+	public void reanonymize(Blackhole blackhole) {
+		for (String type : deanonymizedTypes) blackhole.consume(reanonymizer.anonymizeType(type));
+	}
+
+}
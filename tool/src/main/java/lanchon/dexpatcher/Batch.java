@@ -0,0 +1,178 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lanchon.dexpatcher.core.Context;
+import lanchon.dexpatcher.core.logger.BufferedLogger;
+import lanchon.dexpatcher.core.logger.Logger;
+
+import org.apache.commons.cli.ParseException;
+
+import static lanchon.dexpatcher.core.logger.Logger.Level.*;
+
+// Runs the jobs listed in a batch file in one process, sharing read-only state among them.
+// Each non-empty line of the file that does not start with '#' holds the command line of a job,
+// in which arguments are separated by whitespace and can be quoted with single or double quotes.
+// Jobs run concurrently, but their logs are output in order.
+
+public final class Batch {
+
+	private static final class Job {
+
+		final String line;
+		final List<String> args;
+		final BufferedLogger logger = new BufferedLogger(Context.DEFAULT_LOG_LEVEL);
+		int exitCode;
+
+		Job(String line, List<String> args) {
+			this.line = line;
+			this.args = args;
+		}
+
+	}
+
+	public static boolean run(Logger logger, Configuration config) throws ParseException, IOException {
+		return run(logger, config, null, null);
+	}
+
+	// Relative paths in the jobs are resolved against baseDir if given.
+	static boolean run(Logger logger, Configuration config, BatchCache batchCache, final File baseDir)
+			throws ParseException, IOException {
+
+		logger.setLogLevel(config.logLevel);
+		List<Job> jobs = readJobs(new File(config.batchFile), config.batchOptions);
+		if (jobs.isEmpty()) logger.log(WARN, "no jobs in batch file '" + config.batchFile + "'");
+
+		int threads = config.batchJobs;
+		if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+		threads = Math.max(Math.min(threads, jobs.size()), 1);
+
+		final BatchCache sharedBatchCache = (batchCache != null) ? batchCache : new BatchCache();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		int failed = 0;
+		try {
+			List<Future<Job>> futures = new ArrayList<>(jobs.size());
+			for (final Job job : jobs) {
+				futures.add(executor.submit(new Callable<Job>() {
+					@Override
+					public Job call() {
+						job.exitCode = runJob(job, sharedBatchCache, baseDir);
+						return job;
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				Job job = ParallelDexReader.getResult(futures.get(i));
+				logger.log(NONE, "batch job " + (i + 1) + ": " + job.line);
+				Logger.Level logLevel = logger.getLogLevel();
+				logger.setLogLevel(DEBUG);
+				job.logger.replay(logger);
+				logger.setLogLevel(logLevel);
+				logger.flush();
+				if (job.exitCode != 0) failed++;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		logger.log(NONE, "batch: " + jobs.size() + " job(s), " + failed + " failed");
+		return failed == 0;
+
+	}
+
+	private static int runJob(Job job, BatchCache batchCache, File baseDir) {
+		Logger logger = job.logger;
+		try {
+			// Usage and version output goes to the log of the job, so that it is output in order.
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			Configuration config;
+			try (PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8.name())) {
+				config = Parser.parseCommandLine(job.args.toArray(new String[0]), out, baseDir);
+			} finally {
+				logOutput(logger, output.toString(StandardCharsets.UTF_8.name()));
+			}
+			if (config == null) return 0;
+			if (config.batchFile != null) throw new ParseException("Unexpected option in batch job: batch");
+			if (config.daemonPort >= 0) throw new ParseException("Unexpected option in batch job: daemon");
+			return Processor.processFiles(logger, config, batchCache) ? 0 : 1;
+		} catch (ParseException e) {
+			logger.log(FATAL, e.getMessage());
+			return 2;
+		} catch (Exception e) {
+			Main.logException(logger, e);
+			return 3;
+		}
+	}
+
+	private static void logOutput(Logger logger, String output) {
+		if (output.isEmpty()) return;
+		if (output.endsWith("\n")) output = output.substring(0, output.length() - 1);
+		for (String line : output.split("\r?\n", -1)) logger.log(NONE, line);
+	}
+
+	private static List<Job> readJobs(File file, List<String> batchOptions) throws ParseException, IOException {
+		List<Job> jobs = new ArrayList<>();
+		int lineNumber = 0;
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			List<String> args = splitArgs(line);
+			if (args == null) {
+				throw new ParseException("Unterminated quote in batch file: '" + file + "' (line " + lineNumber + ")");
+			}
+			args.addAll(batchOptions);
+			jobs.add(new Job(line, args));
+		}
+		return jobs;
+	}
+
+	private static List<String> splitArgs(String line) {
+		List<String> args = new ArrayList<>();
+		StringBuilder arg = null;
+		char quote = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quote != 0) {
+				if (c == quote) quote = 0;
+				else arg.append(c);
+			} else if (Character.isWhitespace(c)) {
+				if (arg != null) {
+					args.add(arg.toString());
+					arg = null;
+				}
+			} else {
+				if (arg == null) arg = new StringBuilder();
+				if (c == '"' || c == '\'') quote = c;
+				else arg.append(c);
+			}
+		}
+		if (quote != 0) return null;
+		if (arg != null) args.add(arg.toString());
+		return args;
+	}
+
+	private Batch() {}
+
+}
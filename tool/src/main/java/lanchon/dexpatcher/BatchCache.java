@@ -0,0 +1,121 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lanchon.dexpatcher.core.ActionParser;
+import lanchon.dexpatcher.transform.mapper.map.DexMap;
+
+import org.jf.dexlib2.iface.DexFile;
+
+// Holds read-only state that can be shared by the jobs of a batch. Entries are keyed
+// by the options that produced them and by digests of the contents of the input files
+// involved, so that files that change during the batch are read again, even if they
+// keep their size and their modification time does not change visibly. Only the
+// most recently used entries are kept, so that a long-running daemon does not accumulate
+// stale entries.
+
+public final class BatchCache {
+
+	private static final String NULL_KEY = "\0";
+
+	public static final int DEFAULT_MAX_ENTRIES = 8;
+
+	private static final class LruMap<V> extends LinkedHashMap<String, V> {
+
+		private final int maxEntries;
+
+		public LruMap(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > maxEntries;
+		}
+
+	}
+
+	private final LruMap<ActionParser> actionParsers;
+	private final LruMap<DexMap[]> maps;
+	private final LruMap<DexFile> dexFiles;
+
+	public BatchCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public BatchCache(int maxEntries) {
+		actionParsers = new LruMap<>(maxEntries);
+		maps = new LruMap<>(maxEntries);
+		dexFiles = new LruMap<>(maxEntries);
+	}
+
+	public ActionParser getActionParser(String annotationPackage) {
+		String key = (annotationPackage != null) ? annotationPackage : NULL_KEY;
+		synchronized (actionParsers) {
+			ActionParser actionParser = actionParsers.get(key);
+			if (actionParser == null) {
+				actionParser = new ActionParser(annotationPackage);
+				actionParsers.put(key, actionParser);
+			}
+			return actionParser;
+		}
+	}
+
+	public DexMap[] getMaps(String key) {
+		synchronized (maps) {
+			return maps.get(key);
+		}
+	}
+
+	public void putMaps(String key, DexMap[] value) {
+		synchronized (maps) {
+			if (!maps.containsKey(key)) maps.put(key, value);
+		}
+	}
+
+	public DexFile getDexFile(String key) {
+		synchronized (dexFiles) {
+			return dexFiles.get(key);
+		}
+	}
+
+	public void putDexFile(String key, DexFile value) {
+		synchronized (dexFiles) {
+			if (!dexFiles.containsKey(key)) dexFiles.put(key, value);
+		}
+	}
+
+	public static String getFilesKey(Iterable<String> files) throws IOException {
+		if (files == null) return NULL_KEY;
+		StringBuilder sb = new StringBuilder();
+		for (String file : files) appendFileKey(sb, new File(file));
+		return sb.toString();
+	}
+
+	public static String getFileKey(File file) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		appendFileKey(sb, file);
+		return sb.toString();
+	}
+
+	private static void appendFileKey(StringBuilder sb, File file) throws IOException {
+		ContentDigest digest = new ContentDigest();
+		digest.updateFile("file", file);
+		sb.append('[').append(file.getCanonicalPath()).append(':').append(digest.toHexString()).append(']');
+	}
+
+}
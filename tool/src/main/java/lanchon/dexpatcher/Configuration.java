@@ -11,6 +11,7 @@
 package lanchon.dexpatcher;
 
 import java.util.Collections;
+import java.util.List;
 
 import lanchon.dexpatcher.Processor.PreTransform;
 import lanchon.dexpatcher.core.Context;
@@ -34,15 +35,24 @@ public class Configuration {
 
 	public String annotationPackage = Context.DEFAULT_ANNOTATION_PACKAGE;
 	public boolean constructorAutoIgnoreDisabled;
+	public int patchJobs = 1;
 
 	public String patchedFile;
 	public String templateMapFile;
 	public boolean dryRun;
+	public String cacheDir;
 
 	public Logger.Level logLevel = Context.DEFAULT_LOG_LEVEL;
 
 	public String sourceCodeRoot;
 	public boolean timingStats;
+	public String metricsFile;
+
+	public String batchFile;
+	public int batchJobs = 1;
+	public List<String> batchOptions;
+	public int daemonPort = -1;
+	public int daemonIdleTimeout;
 
 	// Code transform options:
 
@@ -68,6 +78,9 @@ public class Configuration {
 	public boolean invertMap;
 	public Iterable<String> composeMapFiles;
 	public boolean invertComposeMap;
+	public String compiledMapFile;
+	public int mapJobs = 1;
+	public boolean mapReadOnce;
 
 	public String mainAnonymizationPlan = TypeAnonymizer.DEFAULT_MAIN_ANONYMIZATION_PLAN;
 	public String alternateAnonymizationPlan = TypeAnonymizer.DEFAULT_ALTERNATE_ANONYMIZATION_PLAN;
@@ -80,5 +93,6 @@ public class Configuration {
 	public boolean treatDecodeErrorsAsWarnings;
 
 	public PreTransform preTransform = Processor.DEFAULT_PRE_TRANSFORM;
+	public int preTransformJobs = 1;
 
 }
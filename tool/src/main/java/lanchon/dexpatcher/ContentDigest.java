@@ -0,0 +1,78 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+// Computes SHA-256 digests of tagged values and of the contents of files and directories.
+
+final class ContentDigest {
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private final MessageDigest digest;
+	private final byte[] buffer = new byte[64 * 1024];
+
+	public ContentDigest() {
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	public void update(String tag, String value) {
+		digest.update((tag + '=' + value + '\n').getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void updateFiles(String tag, Iterable<String> files) throws IOException {
+		if (files != null) for (String file : files) updateFile(tag, new File(file));
+	}
+
+	public void updateFile(String tag, File file) throws IOException {
+		if (file.isDirectory()) {
+			update(tag, "dir");
+			File[] files = file.listFiles();
+			if (files == null) throw new IOException("cannot list directory '" + file + "'");
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					return f1.getName().compareTo(f2.getName());
+				}
+			});
+			for (File child : files) updateFile(tag + "/" + child.getName(), child);
+		} else if (file.isFile()) {
+			update(tag, "file:" + file.length());
+			try (InputStream in = new FileInputStream(file)) {
+				int count;
+				while ((count = in.read(buffer)) != -1) digest.update(buffer, 0, count);
+			}
+		} else {
+			update(tag, "missing");
+		}
+	}
+
+	public String toHexString() {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+		return sb.toString();
+	}
+
+}
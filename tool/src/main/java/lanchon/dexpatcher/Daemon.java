@@ -0,0 +1,281 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lanchon.dexpatcher.core.logger.BasicLogger;
+import lanchon.dexpatcher.core.logger.Logger;
+
+import static lanchon.dexpatcher.core.logger.Logger.Level.*;
+
+// Serves jobs on a localhost port, so that clients do not pay for JVM startup and jobs
+// reuse warmed-up code and the read-only state kept in a BatchCache. Messages use the
+// encoding of java.io.DataOutput: a client sends the daemon token, its working directory,
+// against which relative paths are resolved, and the argument count followed by the
+// arguments, and the daemon replies with output frames (tag, length, bytes) that carry
+// the output of the job, followed by an exit frame (tag, exit code). See DaemonClient.
+// The token is random and is written to a file in the home directory that only the owner
+// can read, so that other users of the machine cannot submit jobs. Requests must arrive
+// within a timeout, and the daemon can stop after a period without requests.
+
+public final class Daemon {
+
+	static final byte FRAME_OUTPUT = 'O';
+	static final byte FRAME_EXIT = 'X';
+
+	private static final int MAX_ARGS = 0x10000;
+	private static final int HANDSHAKE_TIMEOUT = 10000;     // milliseconds
+	private static final int TOKEN_SIZE = 16;
+
+	private static final class FrameOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		public FrameOutputStream(DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) {
+			buffer.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			buffer.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (buffer.size() != 0) {
+				out.writeByte(FRAME_OUTPUT);
+				out.writeInt(buffer.size());
+				buffer.writeTo(out);
+				buffer.reset();
+			}
+			out.flush();
+		}
+
+	}
+
+	private static final class Request {
+
+		final Socket socket;
+		final DataOutputStream out;
+		final File baseDir;
+		final String[] args;
+
+		Request(Socket socket, DataOutputStream out, File baseDir, String[] args) {
+			this.socket = socket;
+			this.out = out;
+			this.baseDir = baseDir;
+			this.args = args;
+		}
+
+	}
+
+	public static boolean run(final Logger logger, Configuration config) throws IOException {
+		logger.setLogLevel(config.logLevel);
+		int threads = config.batchJobs;
+		if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+		final List<String> options = config.batchOptions;
+		final BatchCache batchCache = new BatchCache();
+		final byte[] token = createToken();
+		long idleTimeout = TimeUnit.SECONDS.toNanos(config.daemonIdleTimeout);
+		final AtomicInteger activeRequests = new AtomicInteger();
+		final AtomicLong lastActivity = new AtomicLong(System.nanoTime());
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		// Requests are read on separate threads with a timeout, so that idle or unauthorized
+		// connections cannot hold the job threads.
+		ExecutorService handshakeExecutor = Executors.newCachedThreadPool();
+		File tokenFile = null;
+		try (ServerSocket serverSocket = new ServerSocket(config.daemonPort, 0, InetAddress.getLoopbackAddress())) {
+			int port = serverSocket.getLocalPort();
+			tokenFile = getTokenFile(port);
+			writeTokenFile(tokenFile, token);
+			tokenFile.deleteOnExit();
+			logger.log(NONE, "listening on port " + port);
+			logger.log(DEBUG, "token file '" + tokenFile + "'");
+			logger.flush();
+			for (;;) {
+				final Socket socket;
+				if (idleTimeout != 0) {
+					long idleTime = (activeRequests.get() == 0) ? System.nanoTime() - lastActivity.get() : 0;
+					if (idleTime >= idleTimeout) break;
+					serverSocket.setSoTimeout((int) Math.max(TimeUnit.NANOSECONDS.toMillis(idleTimeout - idleTime), 1));
+					try {
+						socket = serverSocket.accept();
+					} catch (SocketTimeoutException e) {
+						continue;
+					}
+				} else {
+					socket = serverSocket.accept();
+				}
+				activeRequests.incrementAndGet();
+				handshakeExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						boolean queued = false;
+						try {
+							final Request request = readRequest(socket, token, options);
+							executor.execute(new Runnable() {
+								@Override
+								public void run() {
+									try {
+										serve(request, batchCache, logger);
+									} finally {
+										lastActivity.set(System.nanoTime());
+										activeRequests.decrementAndGet();
+									}
+								}
+							});
+							queued = true;
+						} catch (IOException e) {
+							logRequestFailure(logger, e);
+						} finally {
+							if (!queued) {
+								closeQuietly(socket);
+								lastActivity.set(System.nanoTime());
+								activeRequests.decrementAndGet();
+							}
+						}
+					}
+				});
+			}
+			logger.log(NONE, "stopping after " + config.daemonIdleTimeout + " idle seconds");
+			return true;
+		} finally {
+			handshakeExecutor.shutdownNow();
+			executor.shutdownNow();
+			if (tokenFile != null) tokenFile.delete();
+		}
+	}
+
+	static File getTokenFile(int port) {
+		return new File(System.getProperty("user.home"), ".dexpatcher-daemon-" + port);
+	}
+
+	private static byte[] createToken() {
+		byte[] bytes = new byte[TOKEN_SIZE];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) sb.append(String.format(Locale.ROOT, "%02x", b & 0xFF));
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void writeTokenFile(File file, byte[] token) throws IOException {
+		// The file is written under a temporary name that only the owner can access and then moved into place.
+		Path dir = file.getAbsoluteFile().getParentFile().toPath();
+		Path tempFile;
+		try {
+			tempFile = Files.createTempFile(dir, file.getName(), ".tmp",
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			// Without POSIX permissions, rely on the access rules of the home directory.
+			tempFile = Files.createTempFile(dir, file.getName(), ".tmp");
+		}
+		try {
+			Files.write(tempFile, token);
+			Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tempFile = null;
+		} finally {
+			if (tempFile != null) Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static Request readRequest(Socket socket, byte[] token, List<String> options) throws IOException {
+		socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		byte[] clientToken = in.readUTF().getBytes(StandardCharsets.UTF_8);
+		if (!MessageDigest.isEqual(token, clientToken)) throw new IOException("invalid token");
+		File baseDir = new File(in.readUTF());
+		if (!baseDir.isAbsolute()) throw new IOException("invalid working directory");
+		int count = in.readInt();
+		if (count < 0 || count > MAX_ARGS) throw new IOException("invalid argument count");
+		List<String> args = new ArrayList<>(count + options.size());
+		for (int i = 0; i < count; i++) args.add(in.readUTF());
+		args.addAll(options);
+		socket.setSoTimeout(0);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		return new Request(socket, out, baseDir, args.toArray(new String[0]));
+	}
+
+	private static void serve(Request request, BatchCache batchCache, Logger logger) {
+		try (Socket s = request.socket) {
+			DataOutputStream out = request.out;
+			PrintStream printStream = new PrintStream(new FrameOutputStream(out), true);
+			Logger jobLogger = new BasicLogger(printStream);
+			int exitCode;
+			try {
+				exitCode = Main.run(request.args, jobLogger, printStream, batchCache, request.baseDir);
+			} catch (Throwable e) {
+				// The client always gets an exit frame, even if the job failed with an error.
+				exitCode = 3;
+				Main.logException(jobLogger, e);
+				jobLogger.flush();
+			}
+			printStream.flush();
+			out.writeByte(FRAME_EXIT);
+			out.writeInt(exitCode);
+			out.flush();
+		} catch (IOException e) {
+			logRequestFailure(logger, e);
+		}
+	}
+
+	private static void logRequestFailure(Logger logger, IOException e) {
+		// The client is gone or misbehaved, so the failure can only be reported locally.
+		synchronized (logger) {
+			logger.log(DEBUG, "daemon: request failed: " + e);
+			logger.flush();
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Ignore.
+		}
+	}
+
+	private Daemon() {}
+
+}
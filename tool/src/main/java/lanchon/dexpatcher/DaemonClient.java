@@ -0,0 +1,78 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+// Runs a job on a daemon started with '--daemon <port>' and copies its output.
+// The daemon must run as the same user, because only that user can read its token file.
+// Build tools can call run() in-process to avoid starting a JVM for every job.
+
+public final class DaemonClient {
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.err.println("usage: " + DaemonClient.class.getName() + " <port> [<argument> ...]");
+			System.exit(2);
+		}
+		int value;
+		try {
+			value = run(Integer.parseInt(args[0]), Arrays.copyOfRange(args, 1, args.length), System.out);
+		} catch (NumberFormatException e) {
+			System.err.println("fatal: invalid port: '" + args[0] + "'");
+			value = 2;
+		} catch (IOException e) {
+			System.err.println("fatal: exception: " + e);
+			value = 3;
+		}
+		System.exit(value);
+	}
+
+	public static int run(int port, String[] args, OutputStream output) throws IOException {
+		String token = new String(Files.readAllBytes(Daemon.getTokenFile(port).toPath()), StandardCharsets.UTF_8);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(token);
+			out.writeUTF(new File(System.getProperty("user.dir")).getAbsolutePath());
+			out.writeInt(args.length);
+			for (String arg : args) out.writeUTF(arg);
+			out.flush();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			for (;;) {
+				byte tag = in.readByte();
+				if (tag == Daemon.FRAME_OUTPUT) {
+					byte[] buffer = new byte[in.readInt()];
+					in.readFully(buffer);
+					output.write(buffer);
+					output.flush();
+				} else if (tag == Daemon.FRAME_EXIT) {
+					return in.readInt();
+				} else {
+					throw new IOException("invalid daemon frame");
+				}
+			}
+		}
+	}
+
+	private DaemonClient() {}
+
+}
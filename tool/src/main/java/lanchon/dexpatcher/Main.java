@@ -11,9 +11,11 @@
 package lanchon.dexpatcher;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.util.Locale;
 
 import lanchon.dexpatcher.core.logger.BasicLogger;
@@ -45,18 +47,19 @@ public class Main {
 	}
 
 	public static int run(String[] args, Logger logger) {
+		return run(args, logger, System.out, null, null);
+	}
+
+	// Relative paths in the arguments are resolved against baseDir if given.
+	static int run(String[] args, Logger logger, PrintStream out, BatchCache batchCache, File baseDir) {
 		try {
-			boolean success = runWithExceptions(args, logger);
+			boolean success = runWithExceptions(args, logger, out, batchCache, baseDir);
 			return success ? 0 : 1;
 		} catch (ParseException e) {
 			logger.log(FATAL, e.getMessage());
 			return 2;
 		} catch (Exception e) {
-			if (logger.isLogging(DEBUG)) {
-				logger.log(FATAL, "exception:", e);
-			} else {
-				logger.log(FATAL, "exception: " + e);
-			}
+			logException(logger, e);
 			return 3;
 		} finally {
 			logger.flush();
@@ -64,16 +67,34 @@ public class Main {
 	}
 
 	public static boolean runWithExceptions(String[] args, Logger logger) throws ParseException, IOException {
+		return runWithExceptions(args, logger, System.out, null, null);
+	}
+
+	static boolean runWithExceptions(String[] args, Logger logger, PrintStream out, BatchCache batchCache,
+			File baseDir) throws ParseException, IOException {
 		try {
-			Configuration config = Parser.parseCommandLine(args);
+			Configuration config = Parser.parseCommandLine(args, out, baseDir);
 			if (config == null) return true;
 			logger.log(NONE, getHeader());
-			return Processor.processFiles(logger, config);
+			if (config.daemonPort >= 0) {
+				if (batchCache != null) throw new ParseException("Unexpected option in daemon request: daemon");
+				return Daemon.run(logger, config);
+			}
+			if (config.batchFile != null) return Batch.run(logger, config, batchCache, baseDir);
+			return Processor.processFiles(logger, config, batchCache);
 		} finally {
 			logger.flush();
 		}
 	}
 
+	static void logException(Logger logger, Throwable e) {
+		if (logger.isLogging(DEBUG)) {
+			logger.log(FATAL, "exception:", e);
+		} else {
+			logger.log(FATAL, "exception: " + e);
+		}
+	}
+
 	public static String getVersion() {
 		final String FILE = "version";
 		try (InputStream is = Main.class.getResourceAsStream(FILE)) {
@@ -12,8 +12,12 @@ package lanchon.dexpatcher;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.transform.mapper.CompiledMapFile;
 import lanchon.dexpatcher.transform.mapper.MapFileReader;
 import lanchon.dexpatcher.transform.mapper.map.DexMap;
 import lanchon.dexpatcher.transform.mapper.map.builder.CompositeMapBuilder;
@@ -26,35 +30,83 @@ import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 public final class MapReader {
 
 	public static boolean readMapPair(Iterable<String> mapFiles, DexMap inverseComposeMap, boolean invertMap,
-			DexMapping directMap, DexMapping inverseMap, Logger logger) throws IOException {
+			DexMapping directMap, DexMapping inverseMap, Logger logger, ExecutorService executor, boolean readOnce)
+			throws IOException {
 		return readMapPair(mapFiles, inverseComposeMap, invertMap ? inverseMap : directMap, invertMap ? directMap : inverseMap,
-				logger);
+				logger, executor, readOnce);
 	}
 
 	public static boolean readMapPair(Iterable<String> mapFiles, DexMap inverseComposeMap, DexMapping directMap,
-			MapBuilder inverseMap, Logger logger) throws IOException {
+			MapBuilder inverseMap, Logger logger, ExecutorService executor, boolean readOnce) throws IOException {
 		// The direct map is needed to read the inverse map. (It will be discarded if not needed further.)
 		if (directMap == null) {
 			if (inverseMap == null) return true;
 			directMap = new DexMapping();
 		}
 		MapBuilder directMapBuilder = CompositeMapBuilder.of(directMap, inverseComposeMap);
-		boolean success = readMap(mapFiles, directMapBuilder, logger);
-		// Read the inverse map only if needed. (It is more memory efficient to read it again from disk.)
+		int errors = getErrorCount(logger);
+		MapFileReader.ParsedMapFiles parsedMapFiles = null;
+		if (readOnce && inverseMap != null) {
+			parsedMapFiles = MapFileReader.readAndKeep(getFiles(mapFiles), true, directMapBuilder, logger, executor);
+		} else {
+			readMap(mapFiles, directMapBuilder, logger, executor);
+		}
+		boolean success = (errors == getErrorCount(logger));
+		// Read the inverse map only if needed. (Unless the parsed map files were kept, it is more memory
+		// efficient to read it again from disk.)
 		if (inverseMap != null && (success || !Processor.ABORT_ON_EARLY_ERRORS)) {
 			MapBuilder inverseMapBuilder = new InverseMapBuilder(inverseMap, directMap);
 			inverseMapBuilder = CompositeMapBuilder.of(inverseMapBuilder, inverseComposeMap);
-			success = readMap(mapFiles, inverseMapBuilder, logger) && success;
+			if (parsedMapFiles != null) {
+				errors = getErrorCount(logger);
+				parsedMapFiles.build(inverseMapBuilder, logger);
+				success = (errors == getErrorCount(logger)) && success;
+			} else {
+				success = readMap(mapFiles, inverseMapBuilder, logger, executor) && success;
+			}
 		}
 		return success;
 	}
 
-	public static boolean readMap(Iterable<String> mapFiles, MapBuilder mapBuilder, Logger logger) throws IOException {
-		int errors = logger.getMessageCount(FATAL) + logger.getMessageCount(ERROR);
+	// Returns null unless the map files consist of a compiled map file.
+	public static CompiledMapFile readCompiledMap(Iterable<String> mapFiles, boolean composed) throws IOException {
+		int count = 0;
+		File compiledMapFile = null;
 		for (String mapFile : mapFiles) {
-			MapFileReader.read(new File(mapFile), true, mapBuilder, logger);
+			count++;
+			File file = new File(mapFile);
+			if (CompiledMapFile.isCompiledMapFile(file)) compiledMapFile = file;
+		}
+		if (compiledMapFile == null) return null;
+		if (count != 1) {
+			throw new IOException("cannot combine compiled map file '" + compiledMapFile + "' with other map files");
+		}
+		if (composed) throw new IOException("cannot compose compiled map file '" + compiledMapFile + "'");
+		return CompiledMapFile.read(compiledMapFile);
+	}
+
+	// If an executor is given, map files are parsed concurrently.
+	public static boolean readMap(Iterable<String> mapFiles, MapBuilder mapBuilder, Logger logger,
+			ExecutorService executor) throws IOException {
+		int errors = getErrorCount(logger);
+		if (executor != null) {
+			MapFileReader.read(getFiles(mapFiles), true, mapBuilder, logger, executor);
+		} else {
+			for (String mapFile : mapFiles) {
+				MapFileReader.read(new File(mapFile), true, mapBuilder, logger);
+			}
 		}
-		return (errors == (logger.getMessageCount(FATAL) + logger.getMessageCount(ERROR)));
+		return (errors == getErrorCount(logger));
+	}
+
+	private static List<File> getFiles(Iterable<String> mapFiles) {
+		List<File> files = new ArrayList<>();
+		for (String mapFile : mapFiles) files.add(new File(mapFile));
+		return files;
+	}
+
+	private static int getErrorCount(Logger logger) {
+		return logger.getMessageCount(FATAL) + logger.getMessageCount(ERROR);
 	}
 
 	private MapReader() {}
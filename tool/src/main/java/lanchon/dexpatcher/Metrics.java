@@ -0,0 +1,250 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.common.collect.Iterables;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+
+// Records machine-readable metrics of processing stages and writes them as JSON.
+// CPU time and allocated bytes are process-wide when the JVM supports it, so they include
+// worker threads. The allocations of threads that end cannot be read anymore, so allocated
+// bytes are omitted for stages during which a thread ended. Peak heap is the maximum total
+// heap usage, sampled periodically while the stage runs.
+
+public final class Metrics {
+
+	private static final long HEAP_SAMPLE_INTERVAL = 10;    // milliseconds
+
+	public final class Sample {
+
+		private final long wallTime;
+		private final long cpuTime;
+		private final long startedThreads;
+		private final long[] threadIds;
+		private final long[] threadAllocatedBytes;
+		private final long gcTime;
+		private final long gcCount;
+		private long peakHeap;
+
+		private Sample() {
+			peakHeap = getHeapUsed();
+			synchronized (openSamples) {
+				openSamples.add(this);
+			}
+			gcTime = getGcTime();
+			gcCount = getGcCount();
+			startedThreads = threadBean.getTotalStartedThreadCount();
+			threadIds = (allocationBean != null) ? threadBean.getAllThreadIds() : null;
+			threadAllocatedBytes = (threadIds != null) ? allocationBean.getThreadAllocatedBytes(threadIds) : null;
+			cpuTime = getCpuTime();
+			wallTime = System.nanoTime();
+		}
+
+	}
+
+	private static final class Stage {
+
+		String name;
+		int types;
+		long fields = -1;
+		long methods = -1;
+		long wallTime;
+		long cpuTime;
+		long allocatedBytes;
+		long gcTime;
+		long gcCount;
+		long peakHeap;
+
+	}
+
+	private final List<Stage> stages = new ArrayList<>();
+	private final List<Sample> openSamples = new ArrayList<>();
+	private final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final com.sun.management.ThreadMXBean allocationBean;
+	private final java.lang.management.OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+	private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+	private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+	private final Thread heapSampler;
+
+	public Metrics() {
+		com.sun.management.ThreadMXBean bean = null;
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			bean = (com.sun.management.ThreadMXBean) threadBean;
+			if (bean.isThreadAllocatedMemorySupported()) bean.setThreadAllocatedMemoryEnabled(true);
+			if (!bean.isThreadAllocatedMemoryEnabled()) bean = null;
+		}
+		allocationBean = bean;
+		heapSampler = new Thread("metrics heap sampler") {
+			@Override
+			public void run() {
+				try {
+					for (;;) {
+						sampleHeap();
+						Thread.sleep(HEAP_SAMPLE_INTERVAL);
+					}
+				} catch (InterruptedException e) {
+					// Stop.
+				}
+			}
+		};
+		heapSampler.setDaemon(true);
+		heapSampler.start();
+	}
+
+	public void close() {
+		heapSampler.interrupt();
+	}
+
+	public Sample start() {
+		return new Sample();
+	}
+
+	public void record(Sample sample, String name, int types, DexFile countedDex) {
+		long wallTime = System.nanoTime();
+		long cpuTime = getCpuTime();
+		long allocatedBytes = getAllocatedBytes(sample);
+		sampleHeap();
+		synchronized (openSamples) {
+			openSamples.remove(sample);
+		}
+		Stage stage = new Stage();
+		stage.name = name;
+		stage.types = types;
+		stage.wallTime = wallTime - sample.wallTime;
+		stage.cpuTime = (cpuTime >= 0 && sample.cpuTime >= 0) ? cpuTime - sample.cpuTime : -1;
+		stage.allocatedBytes = allocatedBytes;
+		stage.gcTime = getGcTime() - sample.gcTime;
+		stage.gcCount = getGcCount() - sample.gcCount;
+		stage.peakHeap = sample.peakHeap;
+		if (countedDex != null) {
+			long fields = 0;
+			long methods = 0;
+			for (ClassDef classDef : countedDex.getClasses()) {
+				fields += Iterables.size(classDef.getFields());
+				methods += Iterables.size(classDef.getMethods());
+			}
+			stage.fields = fields;
+			stage.methods = methods;
+		}
+		stages.add(stage);
+	}
+
+	public void write(File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write("{\n");
+			writer.write("  \"version\": " + quote(Main.getVersion()) + ",\n");
+			writer.write("  \"stages\": [");
+			boolean first = true;
+			for (Stage stage : stages) {
+				writer.write(first ? "\n" : ",\n");
+				first = false;
+				writer.write("    {");
+				writer.write("\"name\": " + quote(stage.name));
+				writer.write(", \"types\": " + stage.types);
+				if (stage.fields >= 0) writer.write(", \"fields\": " + stage.fields);
+				if (stage.methods >= 0) writer.write(", \"methods\": " + stage.methods);
+				writer.write(", \"wallTimeNs\": " + stage.wallTime);
+				if (stage.cpuTime >= 0) writer.write(", \"cpuTimeNs\": " + stage.cpuTime);
+				if (stage.allocatedBytes >= 0) writer.write(", \"allocatedBytes\": " + stage.allocatedBytes);
+				writer.write(", \"gcTimeMs\": " + stage.gcTime);
+				writer.write(", \"gcCount\": " + stage.gcCount);
+				writer.write(", \"peakHeapBytes\": " + stage.peakHeap);
+				writer.write("}");
+			}
+			writer.write(first ? "]\n" : "\n  ]\n");
+			writer.write("}\n");
+		}
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') sb.append('\\').append(c);
+			else if (c < 0x20) sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	private long getCpuTime() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			long time = ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+			if (time >= 0) return time;
+		}
+		return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	// Returns the bytes allocated by all threads since the sample, or -1 if some thread ended meanwhile.
+	private long getAllocatedBytes(Sample sample) {
+		if (sample.threadIds == null) return -1;
+		Map<Long, Long> startBytes = new HashMap<>();
+		for (int i = 0; i < sample.threadIds.length; i++) {
+			if (sample.threadAllocatedBytes[i] >= 0) startBytes.put(sample.threadIds[i], sample.threadAllocatedBytes[i]);
+		}
+		long[] threadIds = threadBean.getAllThreadIds();
+		long[] threadAllocatedBytes = allocationBean.getThreadAllocatedBytes(threadIds);
+		long startedThreads = threadBean.getTotalStartedThreadCount() - sample.startedThreads;
+		long allocatedBytes = 0;
+		for (int i = 0; i < threadIds.length; i++) {
+			if (threadAllocatedBytes[i] < 0) return -1;
+			Long bytes = startBytes.remove(threadIds[i]);
+			if (bytes != null) {
+				allocatedBytes += threadAllocatedBytes[i] - bytes;
+			} else {
+				allocatedBytes += threadAllocatedBytes[i];
+				startedThreads--;
+			}
+		}
+		return (startBytes.isEmpty() && startedThreads == 0) ? allocatedBytes : -1;
+	}
+
+	private long getGcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gcBean : gcBeans) time += Math.max(gcBean.getCollectionTime(), 0);
+		return time;
+	}
+
+	private long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gcBean : gcBeans) count += Math.max(gcBean.getCollectionCount(), 0);
+		return count;
+	}
+
+	private long getHeapUsed() {
+		return memoryBean.getHeapMemoryUsage().getUsed();
+	}
+
+	private void sampleHeap() {
+		long used = getHeapUsed();
+		synchronized (openSamples) {
+			for (Sample sample : openSamples) sample.peakHeap = Math.max(sample.peakHeap, used);
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import lanchon.multidexlib2.AbstractMultiDexContainer;
+import lanchon.multidexlib2.BasicDexEntry;
+import lanchon.multidexlib2.DexFileNameComparator;
+import lanchon.multidexlib2.DexFileNamer;
+import lanchon.multidexlib2.DexIO;
+import lanchon.multidexlib2.EmptyMultiDexContainerException;
+import lanchon.multidexlib2.MultiDexContainerBackedDexFile;
+import lanchon.multidexlib2.MultiDexDetectedException;
+import lanchon.multidexlib2.MultiDexIO;
+import lanchon.multidexlib2.RawDexIO;
+import lanchon.multidexlib2.ZipFileDexContainer;
+
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.dexlib2.iface.MultiDexContainer;
+
+// Reads the dex entries of zip files and directories concurrently. This mirrors
+// MultiDexIO.readDexFile(), which reads (and decompresses) entries one at a time.
+
+public final class ParallelDexReader {
+
+	public static DexFile readDexFile(boolean multiDex, File file, DexFileNamer namer, Opcodes opcodes,
+			DexIO.Logger logger, ExecutorService executor) throws IOException {
+		MultiDexContainer<DexBackedDexFile> container;
+		if (file.isDirectory()) {
+			container = readDirectory(file, namer, opcodes, executor);
+		} else if (file.isFile() && ZipFileDexContainer.isZipFile(file)) {
+			container = readZipFile(file, namer, opcodes, executor);
+		} else {
+			return MultiDexIO.readDexFile(multiDex, file, namer, opcodes, logger);
+		}
+		List<String> entryNames = container.getDexEntryNames();
+		if (logger != null) {
+			for (String entryName : entryNames) {
+				logger.log(file, entryName, container.getEntry(entryName).getDexFile().getClasses().size());
+			}
+		}
+		int entries = entryNames.size();
+		if (entries == 0) throw new EmptyMultiDexContainerException(file.toString());
+		if (!multiDex && entries > 1) throw new MultiDexDetectedException(file.toString());
+		return new MultiDexContainerBackedDexFile<>(container);
+	}
+
+	private static MultiDexContainer<DexBackedDexFile> readDirectory(File directory, final DexFileNamer namer,
+			final Opcodes opcodes, ExecutorService executor) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) throw new IOException("cannot list directory '" + directory + "'");
+		List<String> names = new ArrayList<>();
+		List<Future<DexBackedDexFile>> futures = new ArrayList<>();
+		for (final File file : files) {
+			String name = file.getName();
+			if (namer.isValidName(name) && file.isFile()) {
+				names.add(name);
+				futures.add(executor.submit(new Callable<DexBackedDexFile>() {
+					@Override
+					public DexBackedDexFile call() throws IOException {
+						return RawDexIO.readRawDexFile(file, opcodes);
+					}
+				}));
+			}
+		}
+		return new Container(namer, names, getResults(futures));
+	}
+
+	private static MultiDexContainer<DexBackedDexFile> readZipFile(File file, DexFileNamer namer,
+			final Opcodes opcodes, ExecutorService executor) throws IOException {
+		try (final ZipFile zipFile = new ZipFile(file)) {
+			List<String> names = new ArrayList<>();
+			List<Future<DexBackedDexFile>> futures = new ArrayList<>();
+			Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+			while (zipEntries.hasMoreElements()) {
+				final ZipEntry zipEntry = zipEntries.nextElement();
+				String name = zipEntry.getName();
+				if (namer.isValidName(name)) {
+					names.add(name);
+					futures.add(executor.submit(new Callable<DexBackedDexFile>() {
+						@Override
+						public DexBackedDexFile call() throws IOException {
+							try (InputStream in = zipFile.getInputStream(zipEntry)) {
+								return RawDexIO.readRawDexFile(in, zipEntry.getSize(), opcodes);
+							}
+						}
+					}));
+				}
+			}
+			// The zip file must stay open until all entries are read.
+			return new Container(namer, names, getResults(futures));
+		}
+	}
+
+	static <T> List<T> getResults(List<Future<T>> futures) throws IOException {
+		List<T> results = new ArrayList<>(futures.size());
+		try {
+			for (Future<T> future : futures) results.add(getResult(future));
+		} finally {
+			for (Future<T> future : futures) future.cancel(true);
+		}
+		return results;
+	}
+
+	static <T> T getResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static final class Container extends AbstractMultiDexContainer<DexBackedDexFile> {
+
+		Container(DexFileNamer namer, List<String> names, List<DexBackedDexFile> dexFiles) {
+			Map<String, DexEntry<DexBackedDexFile>> entryMap = new TreeMap<>(new DexFileNameComparator(namer));
+			int size = names.size();
+			for (int i = 0; i < size; i++) {
+				String name = names.get(i);
+				DexEntry<DexBackedDexFile> entry = new BasicDexEntry<>(this, name, dexFiles.get(i));
+				if (entryMap.put(name, entry) != null) throw duplicateEntryName(name);
+			}
+			initialize(entryMap);
+		}
+
+	}
+
+	private ParallelDexReader() {}
+
+}
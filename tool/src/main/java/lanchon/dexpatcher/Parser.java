@@ -10,6 +10,7 @@
 
 package lanchon.dexpatcher;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -41,45 +42,102 @@ import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 
 public class Parser {
 
+	private static final Set<String> PATH_OPTIONS = new HashSet<>(Arrays.asList(
+			"output", "create-map", "cache-dir", "metrics-file", "map", "compose-map", "compile-map", "encode-map"
+	));
+
 	public static Configuration parseCommandLine(String[] args) throws ParseException {
+		return parseCommandLine(args, System.out);
+	}
+
+	public static Configuration parseCommandLine(String[] args, PrintStream out) throws ParseException {
+		return parseCommandLine(args, out, null);
+	}
+
+	public static Configuration parseCommandLine(String[] args, PrintStream out, File baseDir) throws ParseException {
 
 		Options options = getOptions();
 		CommandLine cl = new DefaultParser().parse(options, args);
 
 		if (cl.hasOption("help") || cl.hasOption("?")) {
-			printUsage();
+			printUsage(out);
 			return null;
 		}
 
 		if (cl.hasOption("version")) {
-			System.out.println(Main.getVersion());
+			out.println(Main.getVersion());
 			return null;
 		}
 
-		return parseCommandLine(cl);
+		return parseCommandLine(cl, baseDir);
 
 	}
 
 	public static Configuration parseCommandLine(CommandLine cl) throws ParseException {
+		return parseCommandLine(cl, null);
+	}
+
+	// Relative paths are resolved against baseDir if given.
+	public static Configuration parseCommandLine(CommandLine cl, File baseDir) throws ParseException {
 
 		Configuration config = new Configuration();
 
-		List<String> files = cl.getArgList();
-		if (files.isEmpty()) {
-			throw new ParseException("Missing argument: <source-dex-apk-or-dir>");
+		List<String> files = resolvePaths(baseDir, cl.getArgList());
+		config.batchFile = resolvePath(baseDir, cl.getOptionValue("batch"));
+		Number daemonPort = (Number) cl.getParsedOptionValue("daemon");
+		if (daemonPort != null) {
+			config.daemonPort = daemonPort.intValue();
+			if (config.daemonPort < 0 || config.daemonPort > 0xFFFF) {
+				throw new ParseException("Invalid daemon port: '" + config.daemonPort + "'");
+			}
+			if (config.batchFile != null) throw new ParseException("Incompatible options: batch, daemon");
+			Number daemonIdleTimeout = (Number) cl.getParsedOptionValue("daemon-idle-timeout");
+			if (daemonIdleTimeout != null) {
+				config.daemonIdleTimeout = daemonIdleTimeout.intValue();
+				if (config.daemonIdleTimeout < 0) {
+					throw new ParseException("Invalid daemon idle timeout: '" + config.daemonIdleTimeout + "'");
+				}
+			}
+		}
+		if (config.batchFile != null || daemonPort != null) {
+			if (!files.isEmpty()) {
+				throw new ParseException("Unexpected argument in " + (daemonPort != null ? "daemon" : "batch") +
+						" mode: '" + files.get(0) + "'");
+			}
+			config.batchOptions = getBatchOptions(cl, daemonPort != null);
+		} else {
+			if (files.isEmpty()) {
+				throw new ParseException("Missing argument: <source-dex-apk-or-dir>");
+			}
+			config.sourceFile = files.get(0);
+			config.patchFiles = new ArrayList<>(files.subList(1, files.size()));
 		}
 
-		config.sourceFile = files.get(0);
-		config.patchFiles = new ArrayList<>(files.subList(1, files.size()));
-
-		parseMainOptions(cl, config);
-		parseTransformOptions(cl, config);
+		parseMainOptions(cl, config, baseDir);
+		parseTransformOptions(cl, config, baseDir);
 
 		return config;
 
 	}
 
-	private static void parseMainOptions(CommandLine cl, Configuration config) throws ParseException {
+	private static String resolvePath(File baseDir, String path) {
+		if (baseDir == null || path == null || new File(path).isAbsolute()) return path;
+		return new File(baseDir, path).getPath();
+	}
+
+	private static List<String> resolvePaths(File baseDir, List<String> paths) {
+		if (baseDir == null || paths == null) return paths;
+		List<String> resolvedPaths = new ArrayList<>(paths.size());
+		for (String path : paths) resolvedPaths.add(resolvePath(baseDir, path));
+		return resolvedPaths;
+	}
+
+	private static List<String> getPathValues(CommandLine cl, String opt, File baseDir) {
+		String[] values = cl.getOptionValues(opt);
+		return (values != null) ? resolvePaths(baseDir, Arrays.asList(values)) : null;
+	}
+
+	private static void parseMainOptions(CommandLine cl, Configuration config, File baseDir) throws ParseException {
 
 		Number apiLevel = (Number) cl.getParsedOptionValue("api-level");
 		if (apiLevel != null) config.apiLevel = apiLevel.intValue();
@@ -95,10 +153,13 @@ public class Parser {
 		config.annotationPackage = cl.getOptionValue("annotations", Context.DEFAULT_ANNOTATION_PACKAGE);
 		if (config.annotationPackage.isEmpty()) config.annotationPackage = null;
 		config.constructorAutoIgnoreDisabled = cl.hasOption("no-auto-ignore");
+		Number patchJobs = (Number) cl.getParsedOptionValue("patch-jobs");
+		if (patchJobs != null) config.patchJobs = patchJobs.intValue();
 
-		config.patchedFile = cl.getOptionValue("output");
-		config.templateMapFile = cl.getOptionValue("create-map");
+		config.patchedFile = resolvePath(baseDir, cl.getOptionValue("output"));
+		config.templateMapFile = resolvePath(baseDir, cl.getOptionValue("create-map"));
 		config.dryRun = cl.hasOption("dry-run");
+		config.cacheDir = resolvePath(baseDir, cl.getOptionValue("cache-dir"));
 
 		config.logLevel = WARN;
 		if (cl.hasOption("quiet")) config.logLevel = ERROR;
@@ -108,10 +169,39 @@ public class Parser {
 		if (cl.hasOption("path")) config.sourceCodeRoot = "";
 		config.sourceCodeRoot = cl.getOptionValue("path-root", config.sourceCodeRoot);
 		config.timingStats = cl.hasOption("stats");
+		config.metricsFile = resolvePath(baseDir, cl.getOptionValue("metrics-file"));
 
+		Number batchJobs = (Number) cl.getParsedOptionValue("batch-jobs");
+		if (batchJobs != null) config.batchJobs = batchJobs.intValue();
+
+	}
+
+	// Options given in batch or daemon mode are appended to the command line of every job.
+	// Daemon jobs resolve relative paths against the directory of the client, so the paths
+	// given to the daemon itself are made absolute.
+	private static List<String> getBatchOptions(CommandLine cl, boolean absolutePaths) {
+		List<String> args = new ArrayList<>();
+		for (Option option : cl.getOptions()) {
+			String longOpt = option.getLongOpt();
+			if ("batch".equals(longOpt) || "batch-jobs".equals(longOpt) || "daemon".equals(longOpt) ||
+					"daemon-idle-timeout".equals(longOpt)) continue;
+			String name = (longOpt != null) ? "--" + longOpt : "-" + option.getOpt();
+			String[] values = option.getValues();
+			if (values == null) {
+				args.add(name);
+			} else {
+				boolean isPath = absolutePaths && PATH_OPTIONS.contains(longOpt);
+				for (String value : values) {
+					args.add(name);
+					args.add(isPath ? new File(value).getAbsolutePath() : value);
+				}
+			}
+		}
+		return args;
 	}
 
-	private static void parseTransformOptions(CommandLine cl, Configuration config) throws ParseException {
+	private static void parseTransformOptions(CommandLine cl, Configuration config, File baseDir)
+			throws ParseException {
 
 		config.mapSource = cl.hasOption("map-source");
 
@@ -119,15 +209,18 @@ public class Parser {
 		config.unmapPatches = cl.hasOption("unmap-patches");
 		config.unmapOutput = cl.hasOption("unmap-output");
 
-		String[] mapFiles = cl.getOptionValues("map");
-		if (mapFiles != null) config.mapFiles = Arrays.asList(mapFiles);
-		if (config.mapFiles == null && (config.mapSource || config.unmapSource || config.unmapPatches || config.unmapOutput)) {
+		config.mapFiles = getPathValues(cl, "map", baseDir);
+		config.compiledMapFile = resolvePath(baseDir, cl.getOptionValue("compile-map"));
+		if (config.mapFiles == null && (config.mapSource || config.unmapSource || config.unmapPatches || config.unmapOutput ||
+				config.compiledMapFile != null)) {
 			throw new ParseException("Missing option: map");
 		}
 		config.invertMap = cl.hasOption("invert-map");
+		Number mapJobs = (Number) cl.getParsedOptionValue("map-jobs");
+		if (mapJobs != null) config.mapJobs = mapJobs.intValue();
+		config.mapReadOnce = cl.hasOption("map-read-once");
 
-		String[] composeMapFiles = cl.getOptionValues("compose-map");
-		if (composeMapFiles != null) config.composeMapFiles = Arrays.asList(composeMapFiles);
+		config.composeMapFiles = getPathValues(cl, "compose-map", baseDir);
 		config.invertComposeMap = cl.hasOption("invert-compose-map");
 
 		config.deanonSource = cl.hasOption("deanon-source");
@@ -165,8 +258,7 @@ public class Parser {
 		if (!StringCodec.isValidCodeMarker(config.codeMarker)) {
 			throw new ParseException("Invalid code marker: '" + config.codeMarker + "'");
 		}
-		String[] encodeMapFiles = cl.getOptionValues("encode-map");
-		if (encodeMapFiles != null) config.encodeMapFiles = Arrays.asList(encodeMapFiles);
+		config.encodeMapFiles = getPathValues(cl, "encode-map", baseDir);
 		config.invertEncodeMap = cl.hasOption("invert-encode-map");
 		if (true || config.encodeSource) parseEncoderOptions(cl, config.encoderConfiguration);
 		config.treatDecodeErrorsAsWarnings = cl.hasOption("no-decode-errors");
@@ -178,6 +270,8 @@ public class Parser {
 				throw new ParseException("Invalid pre-transform set: '" + preTransformSet + "'");
 			}
 		}
+		Number preTransformJobs = (Number) cl.getParsedOptionValue("transform-jobs");
+		if (preTransformJobs != null) config.preTransformJobs = preTransformJobs.intValue();
 
 	}
 
@@ -262,9 +356,13 @@ public class Parser {
 		int descPadding = formatter.getDescPadding();
 		String usage = "dexpatcher [<option> ...] [--output <patched-dex-or-dir>] " +
 				"<source-dex-apk-or-dir> [<patch-dex-apk-or-dir> ...]";
+		String batchUsage = "dexpatcher [<option> ...] --batch <file>";
+		String daemonUsage = "dexpatcher [<option> ...] --daemon <port>";
 		formatter.printWrapped(writer, width, Main.getHeader());
 		writer.println();
 		formatter.printUsage(writer, width, usage);
+		formatter.printUsage(writer, width, batchUsage);
+		formatter.printUsage(writer, width, daemonUsage);
 		writer.println();
 		formatter.printWrapped(writer, width, "main options:");
 		formatter.printOptions(writer, width, addMainOptions(new Options()), leftPadding, descPadding);
@@ -300,10 +398,13 @@ public class Parser {
 		options.addOption(Option.builder().longOpt("annotations").hasArg().argName("package").desc("package name of DexPatcher annotations\n" +
 				"(default: '" + Context.DEFAULT_ANNOTATION_PACKAGE + "')").build());
 		options.addOption(Option.builder().longOpt("no-auto-ignore").desc("no trivial default constructor auto-ignore").build());
+		options.addOption(Option.builder().longOpt("patch-jobs").hasArg().argName("n").type(Number.class).desc("patch thread count (default: 1)\n" +
+				"(use 0 for available processors)").build());
 
 		options.addOption(Option.builder("o").longOpt("output").hasArg().argName("dex-or-dir").desc("name of output file or directory").build());
 		options.addOption(Option.builder().longOpt("create-map").hasArg().argName("file").desc("create template map file based on output").build());
 		options.addOption(Option.builder().longOpt("dry-run").desc("do not write output files (much faster)").build());
+		options.addOption(Option.builder().longOpt("cache-dir").hasArg().argName("dir").desc("reuse transformed source dex files").build());
 
 		options.addOption(Option.builder("q").longOpt("quiet").desc("do not output warnings").build());
 		options.addOption(Option.builder("v").longOpt("verbose").desc("output extra information").build());
@@ -312,6 +413,14 @@ public class Parser {
 		options.addOption(Option.builder("p").longOpt("path").desc("output relative paths of source code files").build());
 		options.addOption(Option.builder("P").longOpt("path-root").hasArg().argName("root").desc("output absolute paths of source code files").build());
 		options.addOption(Option.builder().longOpt("stats").desc("output timing statistics").build());
+		options.addOption(Option.builder().longOpt("metrics-file").hasArg().argName("file").desc("write per-stage metrics to JSON file").build());
+
+		options.addOption(Option.builder().longOpt("batch").hasArg().argName("file").desc("run the jobs listed in file (one per line)").build());
+		options.addOption(Option.builder().longOpt("batch-jobs").hasArg().argName("n").type(Number.class).desc("batch and daemon job thread count\n" +
+				"(default: 1) (0: available processors)").build());
+		options.addOption(Option.builder().longOpt("daemon").hasArg().argName("port").type(Number.class).desc("serve jobs on localhost port (0: any port)").build());
+		options.addOption(Option.builder().longOpt("daemon-idle-timeout").hasArg().argName("s").type(Number.class).desc("stop daemon after s idle seconds\n" +
+				"(default: 0) (0: never)").build());
 
 		options.addOption(Option.builder("h").longOpt("help").desc("print this help message and exit").build());
 		options.addOption(Option.builder().longOpt("version").desc("print version information and exit").build());
@@ -333,6 +442,10 @@ public class Parser {
 
 		options.addOption(Option.builder().longOpt("compose-map").hasArgs().argName("file").desc("compose map file (repeatable option)").build());
 		options.addOption(Option.builder().longOpt("invert-compose-map").desc("use inverse of compose map file").build());
+		options.addOption(Option.builder().longOpt("compile-map").hasArg().argName("file").desc("create compiled map file based on maps").build());
+		options.addOption(Option.builder().longOpt("map-jobs").hasArg().argName("n").type(Number.class).desc("map file parser thread count\n" +
+				"(default: 1) (0: available processors)").build());
+		options.addOption(Option.builder().longOpt("map-read-once").desc("parse map files once for both directions").build());
 
 		options.addOption(Option.builder().longOpt("deanon-source").desc("deanonymize anonymous classes in source").build());
 		options.addOption(Option.builder().longOpt("deanon-source-alt").desc("deanonymize source with alternate plan").build());
@@ -360,6 +473,8 @@ public class Parser {
 		}
 		options.addOption(Option.builder().longOpt("pre-transform").hasArg().argName("set").desc("add pre-transform stages (default: '" + Processor.DEFAULT_PRE_TRANSFORM.format() + "')\n" +
 				"(<set>: " + preTransformSets + ")").build());
+		options.addOption(Option.builder().longOpt("transform-jobs").hasArg().argName("n").type(Number.class).desc("pre-transform thread count (default: 1)\n" +
+				"(use 0 for available processors)").build());
 
 		return options;
 
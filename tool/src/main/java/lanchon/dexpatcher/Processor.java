@@ -12,10 +12,18 @@ package lanchon.dexpatcher;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import lanchon.dexpatcher.core.ActionParser;
 import lanchon.dexpatcher.core.Context;
 import lanchon.dexpatcher.core.DexPatcher;
+import lanchon.dexpatcher.core.logger.BufferedLogger;
 import lanchon.dexpatcher.core.logger.Logger;
 import lanchon.dexpatcher.core.util.TemplateMapFileWriter;
 import lanchon.dexpatcher.transform.TransformLogger;
@@ -27,12 +35,17 @@ import lanchon.dexpatcher.transform.codec.encoder.BasicDexEncoder;
 import lanchon.dexpatcher.transform.codec.encoder.BasicStringEncoder;
 import lanchon.dexpatcher.transform.codec.encoder.EncoderConfiguration;
 import lanchon.dexpatcher.transform.codec.encoder.EncoderDexMap;
+import lanchon.dexpatcher.transform.mapper.CompiledMapFile;
 import lanchon.dexpatcher.transform.mapper.DexMapperModule;
 import lanchon.dexpatcher.transform.mapper.PatchRewriterModule;
+import lanchon.dexpatcher.transform.mapper.map.CompactDexMap;
 import lanchon.dexpatcher.transform.mapper.map.DexMap;
 import lanchon.dexpatcher.transform.mapper.map.LoggingDexMap;
 import lanchon.dexpatcher.transform.mapper.map.builder.DexMapping;
 import lanchon.dexpatcher.transform.util.DexVisitor;
+import lanchon.dexpatcher.transform.util.MemoizingRewriterModule;
+import lanchon.dexpatcher.transform.util.ParallelDexVisitor;
+import lanchon.dexpatcher.transform.util.TypeRewriteCache;
 import lanchon.multidexlib2.BasicDexFileNamer;
 import lanchon.multidexlib2.DexFileNamer;
 import lanchon.multidexlib2.DexIO;
@@ -77,61 +90,133 @@ public class Processor {
 	public static final PreTransform DEFAULT_PRE_TRANSFORM = PreTransform.OUT;
 
 	public static boolean processFiles(Logger logger, Configuration config) throws IOException {
-		return new Processor(logger, config).processFiles();
+		return processFiles(logger, config, null);
 	}
 
-	private static DexFile transformDex(DexFile dex, RewriterModule module) {
-		return new DexRewriter(module).rewriteDexFile(dex);
+	public static boolean processFiles(Logger logger, Configuration config, BatchCache batchCache)
+			throws IOException {
+		Processor processor = new Processor(logger, config, batchCache);
+		try {
+			return processor.processFiles();
+		} finally {
+			processor.shutdownReadExecutors();
+			processor.closeMetrics();
+		}
+	}
+
+	private final class DexPrefetch {
+
+		private final BufferedLogger ioLogger = new BufferedLogger(logger.getLogLevel());
+		private final Future<DexFile> future;
+
+		public DexPrefetch(final File file) {
+			final DexIO.Logger dexIOLogger = getIOLogger(ioLogger, "read '" + file + "'");
+			future = prefetchExecutor.submit(new Callable<DexFile>() {
+				@Override
+				public DexFile call() throws IOException {
+					return readDexFile(file, config.multiDex, true, dexIOLogger);
+				}
+			});
+		}
+
+		public DexFile get() throws IOException {
+			try {
+				return ParallelDexReader.getResult(future);
+			} finally {
+				ioLogger.replay(logger);
+			}
+		}
+
 	}
 
 	private final Logger logger;
 	private final Configuration config;
+	private final BatchCache batchCache;
 
 	private DexFileNamer dexFileNamer;
 	private Opcodes opcodes;
-	private DexMapping directMap;
-	private DexMapping inverseMap;
-	private DexMapping encodeMap;
+	private ActionParser actionParser;
+	private DexMap directMap;
+	private DexMap inverseMap;
+	private DexMap[] mapsToCompile;
+	private DexMap encodeMap;
 	private StringDecoder stringDecoder;
+	private List<TypeRewriteCache<?>> typeCaches;
+	private Metrics metrics;
+	private ExecutorService readExecutor;
+	private ExecutorService prefetchExecutor;
 
-	private Processor(Logger logger, Configuration config) {
+	private Processor(Logger logger, Configuration config, BatchCache batchCache) {
 		this.logger = logger;
 		this.config = config;
+		this.batchCache = batchCache;
 	}
 
 	private boolean processFiles() throws IOException {
 
 		long time = System.nanoTime();
 		int types = 0;
+		metrics = (config.metricsFile != null) ? new Metrics() : null;
+		Metrics.Sample sample = startMetrics();
 
 		logger.setLogLevel(config.logLevel);
 		dexFileNamer = new BasicDexFileNamer();
 		if (config.apiLevel > 0) opcodes = Opcodes.forApi(config.apiLevel);
+		actionParser = (batchCache != null) ? batchCache.getActionParser(config.annotationPackage) :
+				new ActionParser(config.annotationPackage);
 		stringDecoder = new StringDecoder(config.codeMarker);
+		typeCaches = new ArrayList<>();
+		if (config.multiDexJobs != 1) {
+			int threads = config.multiDexJobs;
+			if (threads <= 0) {
+				threads = Math.min(Runtime.getRuntime().availableProcessors(), MultiDexIO.DEFAULT_MAX_THREADS);
+			}
+			readExecutor = Executors.newFixedThreadPool(threads);
+			prefetchExecutor = Executors.newSingleThreadExecutor();
+		}
+
 		configureMaps();
 
 		if (logger.hasNotLoggedErrors() || !ABORT_ON_EARLY_ERRORS) {
 
 			TransformLogger outputLogger = new TransformLogger(logger);
-			boolean preTransformInputs = config.preTransform == PreTransform.INOUT;
+			// Concurrent patching requires inputs to be pre-transformed to keep transform logs deterministic.
+			boolean preTransformInputs = config.preTransform == PreTransform.INOUT || config.patchJobs != 1;
 			String mainPlan = config.mainAnonymizationPlan;
 			String altPlan = config.alternateAnonymizationPlan;
 
-			DexFile dex = readDex(new File(config.sourceFile));
-			TransformLogger sourceLogger = outputLogger.cloneIf(preTransformInputs);
-			dex = mapDex(dex, config.mapSource, directMap, false, sourceLogger, "map source");
-			dex = anonymizeDex(dex, config.deanonSource || config.deanonSourceAlternate,
-					config.deanonSourceAlternate ? altPlan : mainPlan, false, sourceLogger, "deanonymize source");
-			dex = encodeDex(dex, config.encodeSource, encodeMap, config.encoderConfiguration, sourceLogger,
-					"encode source");
-			dex = decodeDex(dex, config.decodeSource, sourceLogger, "decode source");
-			dex = anonymizeDex(dex, config.reanonSource, mainPlan, true, sourceLogger, "reanonymize source");
-			dex = mapDex(dex, config.unmapSource, inverseMap, true, sourceLogger, "unmap source");
-			if (preTransformInputs) preTransformDex(dex, sourceLogger, "transform source");
+			SourceCache sourceCache = SourceCache.open(config, dexFileNamer);
+			File cachedSource = (sourceCache != null) ? sourceCache.lookup() : null;
+			DexFile dex;
+			if (cachedSource != null) {
+				dex = sourceCache.restoreOrder(cachedSource, readDex(cachedSource, true, false, null));
+			} else {
+				dex = readDex(new File(config.sourceFile));
+			}
+			// Patch files are read ahead while the previous input is being processed.
+			List<File> patchFiles = new ArrayList<>();
+			for (String patchFile : config.patchFiles) patchFiles.add(new File(patchFile));
+			DexPrefetch patchPrefetch = prefetchDex(patchFiles, 0);
+			if (cachedSource == null) {
+				TransformLogger sourceLogger = outputLogger.cloneIf(preTransformInputs);
+				dex = mapDex(dex, config.mapSource, directMap, false, sourceLogger, "map source");
+				dex = anonymizeDex(dex, config.deanonSource || config.deanonSourceAlternate,
+						config.deanonSourceAlternate ? altPlan : mainPlan, false, sourceLogger, "deanonymize source");
+				dex = encodeDex(dex, config.encodeSource, encodeMap, config.encoderConfiguration, sourceLogger,
+						"encode source");
+				dex = decodeDex(dex, config.decodeSource, sourceLogger, "decode source");
+				dex = anonymizeDex(dex, config.reanonSource, mainPlan, true, sourceLogger, "reanonymize source");
+				dex = mapDex(dex, config.unmapSource, inverseMap, true, sourceLogger, "unmap source");
+				if (preTransformInputs) preTransformDex(dex, sourceLogger, "transform source");
+				if (sourceCache != null && logger.hasNotLoggedErrors()) sourceCache.store(logger, dex);
+			} else {
+				logger.log(DEBUG, "reuse transformed source from cache entry '" + sourceCache.getKey() + "'");
+			}
 			types += dex.getClasses().size();
 
-			for (String patchFile : config.patchFiles) {
-				DexFile patchDex = readDex(new File(patchFile));
+			for (int i = 0; i < patchFiles.size(); i++) {
+				DexFile patchDex = readDex(patchFiles.get(i), true, patchPrefetch);
+				patchPrefetch = prefetchDex(patchFiles, i + 1);
 				TransformLogger patchLogger = outputLogger.cloneIf(preTransformInputs);
 				patchDex = anonymizeDex(patchDex, config.deanonPatches || config.deanonPatchesAlternate,
 						config.deanonPatchesAlternate ? altPlan : mainPlan, false, patchLogger, "deanonymize patch");
@@ -156,7 +241,7 @@ public class Processor {
 				if (config.dryRun) {
 					logger.log(INFO, "dry run due to '--dry-run' option");
 				} else {
-					if (config.patchedFile == null && config.templateMapFile == null) {
+					if (config.patchedFile == null && config.templateMapFile == null && config.compiledMapFile == null) {
 						logger.log(WARN, "dry run due to missing '--output' and '--create-map' options");
 					} else {
 						if (config.patchedFile != null) {
@@ -166,6 +251,7 @@ public class Processor {
 						if (config.templateMapFile != null) {
 							TemplateMapFileWriter.write(new File(config.templateMapFile), dex, "#");
 						}
+						if (config.compiledMapFile != null) writeCompiledMap(new File(config.compiledMapFile));
 					}
 				}
 			}
@@ -175,7 +261,10 @@ public class Processor {
 		}
 
 		time = System.nanoTime() - time;
+		logTypeCacheStats();
 		logStats("total process", types, time);
+		recordMetrics(sample, "total process", types, null);
+		writeMetrics();
 
 		logger.logErrorAndWarningCounts();
 		return logger.hasNotLoggedErrors();
@@ -183,16 +272,96 @@ public class Processor {
 	}
 
 	private void configureMaps() throws IOException {
-		directMap = (config.mapSource) ? new DexMapping() : null;
-		inverseMap = (config.unmapSource || config.unmapPatches || config.unmapOutput) ? new DexMapping() : null;
-		if (directMap != null || inverseMap != null) {
-			DexMapping inverseComposeMap = (config.composeMapFiles != null) ? new DexMapping() : null;
-			MapReader.readMapPair(config.composeMapFiles, null, config.invertComposeMap, null, inverseComposeMap,
-					logger);
-			MapReader.readMapPair(config.mapFiles, inverseComposeMap, config.invertMap, directMap, inverseMap, logger);
+		ExecutorService mapExecutor = null;
+		if (config.mapJobs != 1) {
+			int threads = config.mapJobs;
+			if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+			mapExecutor = Executors.newFixedThreadPool(threads);
+		}
+		try {
+			configureMaps(mapExecutor);
+		} finally {
+			if (mapExecutor != null) mapExecutor.shutdownNow();
 		}
-		encodeMap = (config.encodeSource && config.encodeMapFiles != null) ? new DexMapping() : null;
-		MapReader.readMapPair(config.encodeMapFiles, null, config.invertEncodeMap, encodeMap, null, logger);
+	}
+
+	private void configureMaps(ExecutorService mapExecutor) throws IOException {
+		boolean compileMap = config.compiledMapFile != null;
+		boolean needDirectMap = config.mapSource || compileMap;
+		boolean needInverseMap = config.unmapSource || config.unmapPatches || config.unmapOutput || compileMap;
+		if (needDirectMap || needInverseMap) {
+			String key = (batchCache == null) ? null : "map:" + needDirectMap + ":" + needInverseMap + ":" + compileMap +
+					":" + config.invertMap + ":" + BatchCache.getFilesKey(config.mapFiles) +
+					":" + config.invertComposeMap + ":" + BatchCache.getFilesKey(config.composeMapFiles);
+			DexMap[] maps = getSharedMaps(key);
+			if (maps == null) {
+				CompiledMapFile compiledMap = MapReader.readCompiledMap(config.mapFiles,
+						config.composeMapFiles != null);
+				if (compiledMap != null) {
+					maps = getCompiledMaps(compiledMap, config.invertMap);
+					if (key != null) batchCache.putMaps(key, maps);
+				} else {
+					DexMapping direct = needDirectMap ? new DexMapping() : null;
+					DexMapping inverse = needInverseMap ? new DexMapping() : null;
+					DexMapping inverseComposeMap = (config.composeMapFiles != null) ? new DexMapping() : null;
+					boolean success = MapReader.readMapPair(config.composeMapFiles, null, config.invertComposeMap,
+							null, inverseComposeMap, logger, mapExecutor, config.mapReadOnce);
+					success = MapReader.readMapPair(config.mapFiles, inverseComposeMap, config.invertMap, direct,
+							inverse, logger, mapExecutor, config.mapReadOnce) && success;
+					// Compiling also needs the maps in builder form.
+					maps = compileMap ? new DexMap[] { compact(direct), compact(inverse), direct, inverse } :
+							new DexMap[] { compact(direct), compact(inverse) };
+					if (success && key != null) batchCache.putMaps(key, maps);
+				}
+			}
+			directMap = maps[0];
+			inverseMap = maps[1];
+			if (compileMap) mapsToCompile = maps;
+		}
+		if (config.encodeSource && config.encodeMapFiles != null) {
+			String key = (batchCache == null) ? null : "encode-map:" + config.invertEncodeMap +
+					":" + BatchCache.getFilesKey(config.encodeMapFiles);
+			DexMap[] maps = getSharedMaps(key);
+			if (maps == null) {
+				CompiledMapFile compiledMap = MapReader.readCompiledMap(config.encodeMapFiles, false);
+				if (compiledMap != null) {
+					maps = getCompiledMaps(compiledMap, config.invertEncodeMap);
+					if (key != null) batchCache.putMaps(key, maps);
+				} else {
+					DexMapping encode = new DexMapping();
+					boolean success = MapReader.readMapPair(config.encodeMapFiles, null, config.invertEncodeMap,
+							encode, null, logger, mapExecutor, config.mapReadOnce);
+					maps = new DexMap[] { compact(encode), null };
+					if (success && key != null) batchCache.putMaps(key, maps);
+				}
+			}
+			encodeMap = maps[0];
+		}
+	}
+
+	private static DexMap compact(DexMapping dexMapping) {
+		return (dexMapping != null) ? new CompactDexMap(dexMapping) : null;
+	}
+
+	private static DexMap[] getCompiledMaps(CompiledMapFile compiledMap, boolean invertMap) {
+		DexMap direct = compiledMap.getDirectMap();
+		DexMap inverse = compiledMap.getInverseMap();
+		return invertMap ? new DexMap[] { inverse, direct } : new DexMap[] { direct, inverse };
+	}
+
+	private void writeCompiledMap(File file) throws IOException {
+		if (mapsToCompile.length == 4) {
+			CompiledMapFile.write(file, (DexMapping) mapsToCompile[2], (DexMapping) mapsToCompile[3]);
+		} else {
+			logger.log(ERROR, "cannot compile map that is already compiled");
+		}
+	}
+
+	private DexMap[] getSharedMaps(String key) {
+		if (key == null) return null;
+		DexMap[] maps = batchCache.getMaps(key);
+		if (maps != null) logger.log(DEBUG, "reuse maps read by a previous job");
+		return maps;
 	}
 
 	private DexFile mapDex(DexFile dex, boolean enabled, DexMap dexMap, boolean isInverseMap, TransformLogger logger,
@@ -202,7 +371,7 @@ public class Processor {
 			TransformLogger privateLogger = logger.cloneIf(preTransformAll);
 			DexMap loggingDexMap = new LoggingDexMap(dexMap, isInverseMap, privateLogger, logPrefix, DEBUG);
 			RewriterModule mapper = new DexMapperModule(loggingDexMap);
-			mapper = PatchRewriterModule.of(mapper, config.annotationPackage);
+			mapper = PatchRewriterModule.of(mapper, actionParser);
 			dex = transformDex(dex, mapper);
 			if (preTransformAll) preTransformDex(dex, privateLogger, logPrefix);
 		}
@@ -232,7 +401,7 @@ public class Processor {
 			EncoderDexMap encoderDexMap = new EncoderDexMap(dex, config.codeMarker, dexMap, encoderConfig);
 			DexMap loggingDexMap = new LoggingDexMap(encoderDexMap, "encoded to '%s'", privateLogger, logPrefix, DEBUG);
 			RewriterModule mapper = new DexMapperModule(loggingDexMap, basicDexEncoder.getModule());
-			mapper = PatchRewriterModule.of(mapper, config.annotationPackage);
+			mapper = PatchRewriterModule.of(mapper, actionParser);
 			dex = transformDex(dex, mapper);
 			if (preTransformAll) preTransformDex(dex, privateLogger, logPrefix);
 		}
@@ -251,28 +420,40 @@ public class Processor {
 		return dex;
 	}
 
+	private DexFile transformDex(DexFile dex, RewriterModule module) {
+		MemoizingRewriterModule memoizingModule = new MemoizingRewriterModule(module, config.timingStats);
+		typeCaches.add(memoizingModule.getTypeCache());
+		return new DexRewriter(memoizingModule).rewriteDexFile(dex);
+	}
+
 	private void preTransformDex(DexFile dex, TransformLogger logger, String logPrefix) {
 		if (logger.isInUse()) {
 			long time = System.nanoTime();
-			// TODO: Implement multi-threaded visitor.
-			//logger.setSync(...);
-			new DexVisitor().visitDexFile(dex);
+			Metrics.Sample sample = startMetrics();
+			if (config.preTransformJobs != 1) {
+				new ParallelDexVisitor(new DexVisitor(), config.preTransformJobs, logger).visitDexFile(dex);
+			} else {
+				new DexVisitor().visitDexFile(dex);
+			}
 			time = System.nanoTime() - time;
 			logStats(logPrefix, dex.getClasses().size(), time);
+			recordMetrics(sample, logPrefix, dex.getClasses().size(), dex);
 			logger.stopLogging();
 		}
 	}
 
 	private Context createContext() {
 		return new Context.Builder(logger)
-			.setAnnotationPackage(config.annotationPackage)
+			.setActionParser(actionParser)
 			.setConstructorAutoIgnoreDisabled(config.constructorAutoIgnoreDisabled)
 			.setSourceCodeRoot(config.sourceCodeRoot)
+			.setPatchJobs(config.patchJobs)
 			.build();
 	}
 
 	private DexFile patchDex(DexFile sourceDex, DexFile patchDex) {
 		long time = System.nanoTime();
+		Metrics.Sample sample = startMetrics();
 		Opcodes patchedOpcodes = opcodes;
 		if (patchedOpcodes == null) {
 			Opcodes sourceOpcodes = sourceDex.getOpcodes();
@@ -288,24 +469,67 @@ public class Processor {
 		}
 		DexFile patchedDex = DexPatcher.process(createContext(), sourceDex, patchDex, patchedOpcodes);
 		time = System.nanoTime() - time;
-		logStats("patch process", sourceDex.getClasses().size() + patchDex.getClasses().size(), time);
+		int typeCount = sourceDex.getClasses().size() + patchDex.getClasses().size();
+		logStats("patch process", typeCount, time);
+		recordMetrics(sample, "patch process", typeCount, null);
 		return patchedDex;
 	}
 
 	private DexFile readDex(File file) throws IOException {
+		return readDex(file, config.multiDex, false, null);
+	}
+
+	private DexFile readDex(File file, boolean shared, DexPrefetch prefetch) throws IOException {
+		return readDex(file, config.multiDex, shared, prefetch);
+	}
+
+	private DexFile readDex(File file, boolean multiDex, boolean shared, DexPrefetch prefetch) throws IOException {
 		String message = "read '" + file + "'";
 		logger.log(INFO, message);
 		long time = System.nanoTime();
-		DexFile dex = MultiDexIO.readDexFile(config.multiDex, file, dexFileNamer, opcodes, getIOLogger(message));
+		Metrics.Sample sample = startMetrics();
+		DexFile dex = (prefetch != null) ? prefetch.get() :
+				readDexFile(file, multiDex, shared, getIOLogger(logger, message));
 		time = System.nanoTime() - time;
 		if (logger.isLogging(DEBUG) && opcodes == null && dex.getOpcodes() != null) {
 			int dexVersion = OpcodeUtils.getDexVersionFromOpcodes(dex.getOpcodes());
 			logger.log(DEBUG, String.format(Locale.ROOT, message + ": dex version '%03d'", dexVersion));
 		}
 		logStats(message, dex.getClasses().size(), time);
+		recordMetrics(sample, message, dex.getClasses().size(), dex);
+		return dex;
+	}
+
+	// Patch files are typically shared by the jobs of a batch, so their dex files are reused.
+	private DexFile readDexFile(File file, boolean multiDex, boolean shared, DexIO.Logger ioLogger)
+			throws IOException {
+		if (!shared || batchCache == null) return readDexFile(file, multiDex, ioLogger);
+		String key = multiDex + ":" + config.apiLevel + ":" + BatchCache.getFileKey(file);
+		DexFile dex = batchCache.getDexFile(key);
+		if (dex == null) {
+			dex = readDexFile(file, multiDex, ioLogger);
+			batchCache.putDexFile(key, dex);
+		}
 		return dex;
 	}
 
+	private DexFile readDexFile(File file, boolean multiDex, DexIO.Logger ioLogger) throws IOException {
+		if (readExecutor != null) {
+			return ParallelDexReader.readDexFile(multiDex, file, dexFileNamer, opcodes, ioLogger, readExecutor);
+		} else {
+			return MultiDexIO.readDexFile(multiDex, file, dexFileNamer, opcodes, ioLogger);
+		}
+	}
+
+	private DexPrefetch prefetchDex(List<File> files, int index) {
+		return (prefetchExecutor != null && index < files.size()) ? new DexPrefetch(files.get(index)) : null;
+	}
+
+	private void shutdownReadExecutors() {
+		if (prefetchExecutor != null) prefetchExecutor.shutdownNow();
+		if (readExecutor != null) readExecutor.shutdownNow();
+	}
+
 	private void writeDex(File file, DexFile dex) throws IOException {
 		String message = "write '" + file + "'";
 		logger.log(INFO, message);
@@ -314,13 +538,15 @@ public class Processor {
 			logger.log(DEBUG, String.format(Locale.ROOT, message + ": dex version '%03d'", dexVersion));
 		}
 		long time = System.nanoTime();
+		Metrics.Sample sample = startMetrics();
 		MultiDexIO.writeDexFile(config.multiDex, config.multiDexJobs, file, dexFileNamer,
-				dex, config.maxDexPoolSize, getIOLogger(message));
+				dex, config.maxDexPoolSize, getIOLogger(logger, message));
 		time = System.nanoTime() - time;
 		logStats(message, dex.getClasses().size(), time);
+		recordMetrics(sample, message, dex.getClasses().size(), null);
 	}
 
-	private DexIO.Logger getIOLogger(final String header) {
+	private static DexIO.Logger getIOLogger(final Logger logger, final String header) {
 		if (!logger.isLogging(DEBUG)) return null;
 		return new DexIO.Logger() {
 			@Override
@@ -338,6 +564,34 @@ public class Processor {
 		};
 	}
 
+	private void logTypeCacheStats() {
+		if (config.timingStats && !typeCaches.isEmpty()) {
+			long hits = 0;
+			long misses = 0;
+			for (TypeRewriteCache<?> typeCache : typeCaches) {
+				hits += typeCache.getHitCount();
+				misses += typeCache.getMissCount();
+			}
+			logger.log(NONE, "stats: type rewrite cache: " + hits + " hits, " + misses + " misses");
+		}
+	}
+
+	private Metrics.Sample startMetrics() {
+		return (metrics != null) ? metrics.start() : null;
+	}
+
+	private void recordMetrics(Metrics.Sample sample, String header, int typeCount, DexFile countedDex) {
+		if (sample != null) metrics.record(sample, header, typeCount, countedDex);
+	}
+
+	private void writeMetrics() throws IOException {
+		if (metrics != null) metrics.write(new File(config.metricsFile));
+	}
+
+	private void closeMetrics() {
+		if (metrics != null) metrics.close();
+	}
+
 	private void logStats(String header, int typeCount, long nanoTime) {
 		if (config.timingStats) {
 			logger.log(NONE, "stats: " + header + ": " +
@@ -0,0 +1,271 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.core.model.BasicClassDef;
+import lanchon.dexpatcher.core.model.BasicDexFile;
+import lanchon.dexpatcher.transform.codec.encoder.EncoderConfiguration;
+import lanchon.multidexlib2.DexFileNamer;
+import lanchon.multidexlib2.MultiDexIO;
+
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.util.FieldUtil;
+import org.jf.dexlib2.util.MethodUtil;
+import org.jf.dexlib2.util.ReferenceUtil;
+
+import static lanchon.dexpatcher.core.logger.Logger.Level.*;
+
+// Caches the transformed source dex on disk, keyed by the contents of the source and
+// of the map files used to transform it, and by the options of the source transforms.
+// The source usually stays the same while the patches change from run to run, so a hit
+// skips reading and transforming the source. Only transformed sources that were written
+// without errors or warnings are cached, so that reading an entry is equivalent to
+// transforming the source again except for the debug messages of the transforms. The
+// order of the classes and of their members is stored along with the dex files and restored
+// on reading, because the layout of the output and of the template map depend on it.
+
+public final class SourceCache {
+
+	private static final String ORDER_NAME = "order.txt";
+	private static final String MEMBER_PREFIX = "\t";
+
+	public static SourceCache open(Configuration config, DexFileNamer dexFileNamer) throws IOException {
+		if (config.cacheDir == null) return null;
+		if (!(config.mapSource || config.deanonSource || config.deanonSourceAlternate || config.encodeSource ||
+				config.decodeSource || config.reanonSource || config.unmapSource)) return null;
+		return new SourceCache(config, dexFileNamer);
+	}
+
+	private final Configuration config;
+	private final DexFileNamer dexFileNamer;
+	private final File cacheDir;
+	private final String key;
+
+	private SourceCache(Configuration config, DexFileNamer dexFileNamer) throws IOException {
+		this.config = config;
+		this.dexFileNamer = dexFileNamer;
+		cacheDir = new File(config.cacheDir);
+		key = computeKey();
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	// Returns the directory of the cached entry, or null if there is none.
+	public File lookup() {
+		File entryDir = new File(cacheDir, key);
+		return entryDir.isDirectory() ? entryDir : null;
+	}
+
+	// Classes are listed in order, each followed by its static fields, instance fields, direct methods
+	// and virtual methods in order.
+	public DexFile restoreOrder(File entryDir, DexFile dex) throws IOException {
+		Map<String, ClassDef> classMap = new HashMap<>();
+		for (ClassDef classDef : dex.getClasses()) classMap.put(classDef.getType(), classDef);
+		List<String> lines = Files.readAllLines(new File(entryDir, ORDER_NAME).toPath(), StandardCharsets.UTF_8);
+		Set<ClassDef> classes = new LinkedHashSet<>(classMap.size());
+		int index = 0;
+		while (index < lines.size()) {
+			ClassDef classDef = classMap.get(lines.get(index++));
+			if (classDef == null) throw invalidEntry(entryDir);
+			int end = index;
+			while (end < lines.size() && lines.get(end).startsWith(MEMBER_PREFIX)) end++;
+			List<String> members = lines.subList(index, end);
+			index = end;
+			if (!classes.add(restoreOrder(classDef, members))) throw invalidEntry(entryDir);
+		}
+		if (classes.size() != classMap.size()) throw invalidEntry(entryDir);
+		return new BasicDexFile(dex.getOpcodes(), classes);
+	}
+
+	private static ClassDef restoreOrder(ClassDef classDef, List<String> members) throws IOException {
+		Map<String, Field> fieldMap = new HashMap<>();
+		for (Field field : classDef.getFields()) fieldMap.put(getMemberKey(field), field);
+		Map<String, Method> methodMap = new HashMap<>();
+		for (Method method : classDef.getMethods()) methodMap.put(getMemberKey(method), method);
+		List<Field> staticFields = new ArrayList<>();
+		List<Field> instanceFields = new ArrayList<>();
+		List<Method> directMethods = new ArrayList<>();
+		List<Method> virtualMethods = new ArrayList<>();
+		for (String member : members) {
+			Field field = fieldMap.remove(member);
+			if (field != null) {
+				(FieldUtil.isStatic(field) ? staticFields : instanceFields).add(field);
+				continue;
+			}
+			Method method = methodMap.remove(member);
+			if (method != null) {
+				(MethodUtil.isDirect(method) ? directMethods : virtualMethods).add(method);
+				continue;
+			}
+			throw new IOException("invalid member order in cache entry");
+		}
+		if (!fieldMap.isEmpty() || !methodMap.isEmpty()) throw new IOException("invalid member order in cache entry");
+		return new BasicClassDef(classDef.getType(), classDef.getAccessFlags(), classDef.getSuperclass(),
+				classDef.getInterfaces(), classDef.getSourceFile(), classDef.getAnnotations(), staticFields,
+				instanceFields, directMethods, virtualMethods);
+	}
+
+	private static void writeOrder(File file, DexFile dex) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (ClassDef classDef : dex.getClasses()) {
+			lines.add(classDef.getType());
+			for (Field field : classDef.getStaticFields()) lines.add(getMemberKey(field));
+			for (Field field : classDef.getInstanceFields()) lines.add(getMemberKey(field));
+			for (Method method : classDef.getDirectMethods()) lines.add(getMemberKey(method));
+			for (Method method : classDef.getVirtualMethods()) lines.add(getMemberKey(method));
+		}
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	private static String getMemberKey(Field field) {
+		return MEMBER_PREFIX + ReferenceUtil.getShortFieldDescriptor(field);
+	}
+
+	private static String getMemberKey(Method method) {
+		return MEMBER_PREFIX + ReferenceUtil.getMethodDescriptor(method, true);
+	}
+
+	private static IOException invalidEntry(File entryDir) {
+		return new IOException("invalid cache entry '" + entryDir + "'");
+	}
+
+	// Writing the transformed source forces its pending transforms, which may log messages.
+	public void store(Logger logger, DexFile dex) throws IOException {
+		File entryDir = new File(cacheDir, key);
+		if (entryDir.isDirectory()) return;
+		int warnings = logger.getMessageCount(WARN);
+		Files.createDirectories(cacheDir.toPath());
+		File tempDir = Files.createTempDirectory(cacheDir.toPath(), key + ".tmp").toFile();
+		try {
+			writeOrder(new File(tempDir, ORDER_NAME), dex);
+			MultiDexIO.writeDexFile(true, 1, tempDir, dexFileNamer, dex, config.maxDexPoolSize, null);
+			if (logger.hasNotLoggedErrors() && logger.getMessageCount(WARN) == warnings) {
+				// Entries are published atomically; if another run stored the same entry first, keep that one.
+				if (tempDir.renameTo(entryDir)) {
+					logger.log(DEBUG, "store cache entry '" + key + "'");
+					tempDir = null;
+				}
+			}
+		} finally {
+			if (tempDir != null) deleteTree(tempDir);
+		}
+	}
+
+	private static void deleteTree(File file) {
+		File[] files = file.listFiles();
+		if (files != null) for (File child : files) deleteTree(child);
+		file.delete();
+	}
+
+	// Key
+
+	private String computeKey() throws IOException {
+		ContentDigest digest = new ContentDigest();
+		digest.update("version", Main.getVersion());
+		digest.update("config", fingerprint(config));
+		digest.updateFile("source", new File(config.sourceFile));
+		if (config.mapSource || config.unmapSource) {
+			digest.updateFiles("map", config.mapFiles);
+			digest.updateFiles("compose-map", config.composeMapFiles);
+		}
+		if (config.encodeSource) digest.updateFiles("encode-map", config.encodeMapFiles);
+		return digest.toHexString();
+	}
+
+	// Only the options that affect the transformed source are hashed. The input files are hashed separately.
+	private static String fingerprint(Configuration config) {
+		StringBuilder sb = new StringBuilder();
+		append(sb, "apiLevel", config.apiLevel);
+		append(sb, "multiDex", config.multiDex);
+		append(sb, "annotationPackage", config.annotationPackage);
+		append(sb, "mapSource", config.mapSource);
+		append(sb, "deanonSource", config.deanonSource);
+		append(sb, "deanonSourceAlternate", config.deanonSourceAlternate);
+		append(sb, "encodeSource", config.encodeSource);
+		append(sb, "decodeSource", config.decodeSource);
+		append(sb, "reanonSource", config.reanonSource);
+		append(sb, "unmapSource", config.unmapSource);
+		append(sb, "invertMap", config.invertMap);
+		append(sb, "invertComposeMap", config.invertComposeMap);
+		append(sb, "mainAnonymizationPlan", config.mainAnonymizationPlan);
+		append(sb, "alternateAnonymizationPlan", config.alternateAnonymizationPlan);
+		append(sb, "codeMarker", config.codeMarker);
+		append(sb, "invertEncodeMap", config.invertEncodeMap);
+		if (config.encodeSource) {
+			EncoderConfiguration encoder = config.encoderConfiguration;
+			append(sb, "escapeNonAscii", encoder.escapeNonAscii);
+			append(sb, "escapeNonAsciiLatin1", encoder.escapeNonAsciiLatin1);
+			append(sb, "disableAsciiLatin1Escapes", encoder.disableAsciiLatin1Escapes);
+			append(sb, "disableCodePointEscapes", encoder.disableCodePointEscapes);
+			append(sb, "obfuscatedBinaryTypeNamePattern", encoder.obfuscatedBinaryTypeNamePattern);
+			append(sb, "obfuscatedPackageNamePattern", encoder.obfuscatedPackageNamePattern);
+			append(sb, "obfuscatedClassNamePattern", encoder.obfuscatedClassNamePattern);
+			append(sb, "obfuscatedMemberNamePattern", encoder.obfuscatedMemberNamePattern);
+			append(sb, "encodeAllClasses", encoder.encodeAllClasses);
+			append(sb, "encodeObfuscatedPackages", encoder.encodeObfuscatedPackages);
+			append(sb, "encodeObfuscatedClasses", encoder.encodeObfuscatedClasses);
+			append(sb, "encodeObfuscatedMembers", encoder.encodeObfuscatedMembers);
+			append(sb, "encodeReservedCharacters", encoder.encodeReservedCharacters);
+			append(sb, "encodeReservedWords", encoder.encodeReservedWords);
+			append(sb, "encodeTypeHintsInClasses", encoder.encodeTypeHintsInClasses);
+			append(sb, "encodeTypeHintsInMembers", encoder.encodeTypeHintsInMembers);
+			append(sb, "encodeTypeInfoInMembers", encoder.encodeTypeInfoInMembers);
+			append(sb, "includeIdentifierType", encoder.includeIdentifierType);
+			append(sb, "allowMultipleTypeHints", encoder.allowMultipleTypeHints);
+			append(sb, "processNestedClasses", encoder.processNestedClasses);
+			append(sb, "ignoredHintTypePattern", encoder.ignoredHintTypePattern);
+			append(sb, "ignoredHintTypes", encoder.ignoredHintTypes);
+		}
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, String name, Object value) {
+		sb.append(name).append('=');
+		if (value == null) {
+			sb.append("null");
+		} else if (value instanceof String) {
+			sb.append('\'').append(value).append('\'');
+		} else if (value instanceof Pattern) {
+			Pattern pattern = (Pattern) value;
+			sb.append("/").append(pattern.pattern()).append("/").append(pattern.flags());
+		} else if (value instanceof Set) {
+			List<String> items = new ArrayList<>();
+			for (Object item : (Set<?>) value) items.add(String.valueOf(item));
+			Collections.sort(items);
+			sb.append('[');
+			for (String item : items) sb.append('\'').append(item).append('\'').append(',');
+			sb.append(']');
+		} else {
+			sb.append(value);
+		}
+		sb.append(';');
+	}
+
+}
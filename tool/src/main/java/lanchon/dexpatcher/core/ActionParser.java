@@ -10,30 +10,71 @@
 
 package lanchon.dexpatcher.core;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import lanchon.dexpatcher.core.util.TypeName;
 
+// Action annotation descriptors are grouped by length, and each group is keyed by the
+// char position that best tells its descriptors apart. Lookups of other descriptors are
+// usually rejected by their length or by a single char, without hashing them.
+
 public class ActionParser {
 
 	private final String annotationPackage;
-	private final Map<String, Action> actionMap;
+	private final int[] keyIndexes;                 // by descriptor length, -1 if no descriptors
+	private final String[][] descriptors;           // by descriptor length
+	private final Action[][] actions;               // by descriptor length
 
 	public ActionParser(String annotationPackage) {
 		this.annotationPackage = annotationPackage;
-		if (annotationPackage == null) {
-			actionMap = Collections.emptyMap();
-		} else {
-			Action[] actions = Action.values();
-			int sizeFactor = 4;
-			actionMap = new HashMap<>(sizeFactor * actions.length);
-			for (Action action : actions) {
+		List<String> descriptorList = new ArrayList<>();
+		List<Action> actionList = new ArrayList<>();
+		if (annotationPackage != null) {
+			for (Action action : Action.values()) {
 				String actionTypeDescriptor = getTypeDescriptor(action);
-				if (actionTypeDescriptor != null) actionMap.put(actionTypeDescriptor, action);
+				if (actionTypeDescriptor != null) {
+					descriptorList.add(actionTypeDescriptor);
+					actionList.add(action);
+				}
+			}
+		}
+		int maxLength = -1;
+		for (String descriptor : descriptorList) maxLength = Math.max(maxLength, descriptor.length());
+		keyIndexes = new int[maxLength + 1];
+		descriptors = new String[maxLength + 1][];
+		actions = new Action[maxLength + 1][];
+		for (int length = 0; length <= maxLength; length++) {
+			List<String> groupDescriptors = new ArrayList<>();
+			List<Action> groupActions = new ArrayList<>();
+			for (int i = 0; i < descriptorList.size(); i++) {
+				if (descriptorList.get(i).length() == length) {
+					groupDescriptors.add(descriptorList.get(i));
+					groupActions.add(actionList.get(i));
+				}
+			}
+			keyIndexes[length] = groupDescriptors.isEmpty() ? -1 : getKeyIndex(groupDescriptors, length);
+			descriptors[length] = groupDescriptors.toArray(new String[0]);
+			actions[length] = groupActions.toArray(new Action[0]);
+		}
+	}
+
+	// Returns the last of the char positions that have the most distinct chars.
+	private static int getKeyIndex(List<String> descriptors, int length) {
+		int keyIndex = length - 1;
+		int maxCount = 0;
+		Set<Character> chars = new HashSet<>();
+		for (int index = length - 1; index >= 0; index--) {
+			chars.clear();
+			for (String descriptor : descriptors) chars.add(descriptor.charAt(index));
+			if (chars.size() > maxCount) {
+				keyIndex = index;
+				maxCount = chars.size();
 			}
 		}
+		return keyIndex;
 	}
 
 	public String getAnnotationPackage() {
@@ -52,7 +93,17 @@ public class ActionParser {
 	}
 
 	public Action parseTypeDescriptor(String typeDescriptor) {
-		return actionMap.get(typeDescriptor);
+		int length = typeDescriptor.length();
+		if (length >= keyIndexes.length) return null;
+		int keyIndex = keyIndexes[length];
+		if (keyIndex < 0) return null;
+		char keyChar = typeDescriptor.charAt(keyIndex);
+		String[] groupDescriptors = descriptors[length];
+		for (int i = 0; i < groupDescriptors.length; i++) {
+			String descriptor = groupDescriptors[i];
+			if (descriptor.charAt(keyIndex) == keyChar && descriptor.equals(typeDescriptor)) return actions[length][i];
+		}
+		return null;
 	}
 
 }
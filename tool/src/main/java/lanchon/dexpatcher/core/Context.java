@@ -26,8 +26,10 @@ public class Context {
 
 		private final Logger logger;
 		private String annotationPackage = DEFAULT_ANNOTATION_PACKAGE;
+		private ActionParser actionParser;
 		private boolean constructorAutoIgnoreDisabled;
 		private String sourceCodeRoot;
+		private int patchJobs = 1;
 
 		public Builder() {
 			this(DEFAULT_LOG_LEVEL);
@@ -47,6 +49,11 @@ public class Context {
 			return this;
 		}
 
+		public Builder setActionParser(ActionParser value) {
+			actionParser = value;
+			return this;
+		}
+
 		public Builder setConstructorAutoIgnoreDisabled(boolean value) {
 			constructorAutoIgnoreDisabled = value;
 			return this;
@@ -57,8 +64,14 @@ public class Context {
 			return this;
 		}
 
+		public Builder setPatchJobs(int value) {
+			patchJobs = value;
+			return this;
+		}
+
 		public Context build() {
-			return new Context(logger, annotationPackage, constructorAutoIgnoreDisabled, sourceCodeRoot);
+			ActionParser parser = (actionParser != null) ? actionParser : new ActionParser(annotationPackage);
+			return new Context(logger, parser, constructorAutoIgnoreDisabled, sourceCodeRoot, patchJobs);
 		}
 
 	}
@@ -67,16 +80,18 @@ public class Context {
 	private final ActionParser actionParser;
 	private final boolean constructorAutoIgnoreDisabled;
 	private final String sourceCodeRoot;
+	private final int patchJobs;
 
-	private Context(Logger logger, String annotationPackage, boolean constructorAutoIgnoreDisabled,
-			String sourceCodeRoot) {
+	private Context(Logger logger, ActionParser actionParser, boolean constructorAutoIgnoreDisabled,
+			String sourceCodeRoot, int patchJobs) {
 		this.logger = logger;
-		actionParser = new ActionParser(annotationPackage);
+		this.actionParser = actionParser;
 		this.constructorAutoIgnoreDisabled = constructorAutoIgnoreDisabled;
 		if (sourceCodeRoot != null && !sourceCodeRoot.isEmpty() && !sourceCodeRoot.endsWith(File.separator)) {
 			sourceCodeRoot += File.separator;
 		}
 		this.sourceCodeRoot = sourceCodeRoot;
+		this.patchJobs = patchJobs;
 	}
 
 	public Logger getLogger() {
@@ -95,4 +110,8 @@ public class Context {
 		return sourceCodeRoot;
 	}
 
+	public int getPatchJobs() {
+		return patchJobs;
+	}
+
 }
@@ -10,10 +10,12 @@
 
 package lanchon.dexpatcher.core;
 
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import lanchon.dexpatcher.core.model.BasicDexFile;
 import lanchon.dexpatcher.core.patcher.PackagePatcher;
@@ -31,10 +33,38 @@ public class DexPatcher {
 	public static DexFile process(Context context, DexFile sourceDex, DexFile patchDex, Opcodes opcodes) {
 		Set<? extends ClassDef> sourceClasses = sourceDex.getClasses();
 		Set<? extends ClassDef> patchClasses = patchDex.getClasses();
-		PackagePatcher patcher = new PackagePatcher(context);
-		Collection<ClassDef> patchedClasses = patcher.process(sourceClasses, sourceClasses.size(),
-				patchClasses, patchClasses.size());
-		return new BasicDexFile(opcodes, Collections.unmodifiableSet(new LinkedHashSet<>(patchedClasses)));
+		Collection<ClassDef> patchedClasses;
+		int patchJobs = context.getPatchJobs();
+		if (patchJobs == 1) {
+			PackagePatcher patcher = new PackagePatcher(context);
+			patchedClasses = patcher.process(sourceClasses, sourceClasses.size(), patchClasses, patchClasses.size());
+		} else {
+			if (patchJobs <= 0) patchJobs = Runtime.getRuntime().availableProcessors();
+			ForkJoinPool pool = new ForkJoinPool(patchJobs);
+			try {
+				PackagePatcher patcher = new PackagePatcher(context, pool);
+				patchedClasses = patcher.process(sourceClasses, sourceClasses.size(), patchClasses, patchClasses.size());
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return new BasicDexFile(opcodes, asSet(patchedClasses));
+	}
+
+	// Patched classes are unique by type, so there is no need to copy them into a new set.
+	// This avoids holding a second copy of the class collection while the output is written.
+	private static Set<ClassDef> asSet(Collection<ClassDef> classes) {
+		final Collection<ClassDef> unmodifiableClasses = Collections.unmodifiableCollection(classes);
+		return new AbstractSet<ClassDef>() {
+			@Override
+			public Iterator<ClassDef> iterator() {
+				return unmodifiableClasses.iterator();
+			}
+			@Override
+			public int size() {
+				return unmodifiableClasses.size();
+			}
+		};
 	}
 
 	private DexPatcher() {}
@@ -32,9 +32,9 @@ public class PatcherAnnotation implements ActionBasedPatcher.ActionContext {
 
 		if (actionParser.isDisabled()) return null;
 
+		// Nothing is allocated unless a patcher annotation is found.
 		Annotation annotation = null;
 		Action action = null;
-		Set<Annotation> filteredAnnotations = new LinkedHashSet<>(annotations.size());
 		for (Annotation an : annotations) {
 			Action ac = actionParser.parseTypeDescriptor(an.getType());
 			if (ac != null) {
@@ -44,13 +44,25 @@ public class PatcherAnnotation implements ActionBasedPatcher.ActionContext {
 				}
 				action = ac;
 				annotation = an;
-			} else {
-				filteredAnnotations.add(an);
 			}
 		}
 
 		if (action == null) return null;
 
+		Set<? extends Annotation> filteredAnnotations;
+		int size = annotations.size();
+		if (size == 1) {
+			filteredAnnotations = Collections.emptySet();
+		} else {
+			// Annotation sets of dex files may return new instances on each iteration, so match by type.
+			String annotationType = annotation.getType();
+			Set<Annotation> set = new LinkedHashSet<>(size);
+			for (Annotation an : annotations) {
+				if (!annotationType.equals(an.getType())) set.add(an);
+			}
+			filteredAnnotations = Collections.unmodifiableSet(set);
+		}
+
 		String target = null;
 		String targetClass = null;
 		Action staticConstructorAction = null;
@@ -109,7 +121,7 @@ public class PatcherAnnotation implements ActionBasedPatcher.ActionContext {
 		}
 
 		return new PatcherAnnotation(action, target, targetClass, staticConstructorAction, defaultAction,
-				contentOnly, recursive, Collections.unmodifiableSet(filteredAnnotations));
+				contentOnly, recursive, filteredAnnotations);
 
 	}
 
@@ -0,0 +1,74 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.core.logger;
+
+import java.util.ArrayList;
+
+// Records messages so that they can be replayed later in order into another logger.
+// Segments reserve a position in the record that can be filled in from another thread.
+
+public class BufferedLogger extends Logger {
+
+	private static class Entry {
+		final Level level;
+		final String message;
+		final Throwable throwable;
+		Entry(Level level, String message, Throwable throwable) {
+			this.level = level;
+			this.message = message;
+			this.throwable = throwable;
+		}
+	}
+
+	private ArrayList<Object> entries = new ArrayList<>();
+	private int[] recordedCounts = new int[Level.values().length];
+
+	public BufferedLogger(Level logLevel) {
+		setLogLevel(logLevel);
+	}
+
+	@Override
+	protected void doLog(Level level, String message, Throwable throwable) {
+		entries.add(new Entry(level, message, throwable));
+		recordedCounts[level.ordinal()]++;
+	}
+
+	public BufferedLogger createSegment() {
+		BufferedLogger segment = new BufferedLogger(getLogLevel());
+		entries.add(segment);
+		return segment;
+	}
+
+	public void replay(Logger logger) {
+		for (Object entry : entries) {
+			if (entry instanceof BufferedLogger) {
+				((BufferedLogger) entry).replay(logger);
+			} else {
+				Entry e = (Entry) entry;
+				logger.log(e.level, e.message, e.throwable);
+			}
+		}
+		// Account for the messages that were filtered out by log level.
+		for (Level level : Level.values()) {
+			logger.addMessageCount(level, getMessageCount(level) - recordedCounts[level.ordinal()]);
+		}
+		entries = new ArrayList<>();
+		recordedCounts = new int[Level.values().length];
+		clearMessageCounts();
+	}
+
+	@Override
+	public void flush() {}
+
+	@Override
+	public void close() {}
+
+}
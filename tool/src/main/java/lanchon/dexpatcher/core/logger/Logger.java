@@ -81,6 +81,10 @@ public abstract class Logger implements Flushable, Closeable {
 		counts = new int[Level.values().length];
 	}
 
+	void addMessageCount(Level level, int count) {
+		counts[level.ordinal()] += count;
+	}
+
 	public boolean hasNotLoggedErrors() {
 		int errors = getMessageCount(FATAL) + getMessageCount(ERROR);
 		return errors == 0;
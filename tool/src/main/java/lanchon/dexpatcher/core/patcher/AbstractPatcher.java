@@ -11,17 +11,17 @@
 package lanchon.dexpatcher.core.patcher;
 
 import java.util.Collection;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import lanchon.dexpatcher.core.Context;
 import lanchon.dexpatcher.core.PatchException;
 import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.core.util.CompactLinkedMap;
 
 import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 
-public abstract class AbstractPatcher<T> {
+public abstract class AbstractPatcher<K, T> {
 
 	static class PatchedItem<T> {
 		final T patch;
@@ -38,20 +38,28 @@ public abstract class AbstractPatcher<T> {
 
 	private String logPrefix;
 
-	private LinkedHashMap<String, T> sourceMap;
-	private LinkedHashMap<String, Boolean> targetedMap;
-	private LinkedHashMap<String, PatchedItem<T>> patchedMap;
+	private CompactLinkedMap<K, T> sourceMap;
+	private CompactLinkedMap<K, Boolean> targetedMap;
+	private CompactLinkedMap<K, PatchedItem<T>> patchedMap;
 
 	protected AbstractPatcher(Context context) {
+		this(context, context.getLogger());
+	}
+
+	protected AbstractPatcher(Context context, Logger logger) {
 		this.context = context;
-		logger = context.getLogger();
+		this.logger = logger;
 		baseLogPrefix = "";
 		logPrefix = baseLogPrefix;
 	}
 
-	protected AbstractPatcher(AbstractPatcher<?> parent) {
+	protected AbstractPatcher(AbstractPatcher<?, ?> parent) {
+		this(parent, parent.logger);
+	}
+
+	protected AbstractPatcher(AbstractPatcher<?, ?> parent, Logger logger) {
 		context = parent.context;
-		logger = parent.logger;
+		this.logger = logger;
 		baseLogPrefix = parent.logPrefix;
 		logPrefix = baseLogPrefix;
 	}
@@ -88,14 +96,14 @@ public abstract class AbstractPatcher<T> {
 	public Collection<T> process(Iterable<? extends T> sourceSet, int sourceSetSizeHint,
 			Iterable<? extends T> patchSet, int patchSetSizeHint) {
 
-		sourceMap = new LinkedHashMap<>(sourceSetSizeHint + patchSetSizeHint);
-		targetedMap = new LinkedHashMap<>();
-		patchedMap = new LinkedHashMap<>(patchSetSizeHint);
+		sourceMap = new CompactLinkedMap<>(sourceSetSizeHint + patchSetSizeHint);
+		targetedMap = new CompactLinkedMap<>(patchSetSizeHint);
+		patchedMap = new CompactLinkedMap<>(patchSetSizeHint);
 
 		try {
 
 			for (T source : sourceSet) {
-				String sourceId = getId(source);
+				K sourceId = getId(source);
 				if (sourceMap.put(sourceId, source) != null) {
 					setupLogPrefix(sourceId, source, null, null);
 					log(ERROR, "duplicate found in source");
@@ -103,7 +111,7 @@ public abstract class AbstractPatcher<T> {
 			}
 
 			for (T patch : patchSet) {
-				String patchId = getId(patch);
+				K patchId = getId(patch);
 				setupLogPrefix(patchId, patch, patch, null);
 				try {
 					onPatch(patchId, patch);
@@ -112,8 +120,8 @@ public abstract class AbstractPatcher<T> {
 				}
 			}
 
-			for (Entry<String, Boolean> entry : targetedMap.entrySet()) {
-				String id = entry.getKey();
+			for (Entry<K, Boolean> entry : targetedMap.entrySet()) {
+				K id = entry.getKey();
 				boolean inPlaceEdit = entry.getValue();
 				PatchedItem<T> patchedItem = patchedMap.get(id);
 				if (patchedItem == null) {
@@ -134,8 +142,8 @@ public abstract class AbstractPatcher<T> {
 				}
 			}
 
-			for (Entry<String, PatchedItem<T>> entry : patchedMap.entrySet()) {
-				String id = entry.getKey();
+			for (Entry<K, PatchedItem<T>> entry : patchedMap.entrySet()) {
+				K id = entry.getKey();
 				PatchedItem<T> patchedItem = entry.getValue();
 				if (sourceMap.put(id, patchedItem.patched) != null) {
 					setupLogPrefix(id, patchedItem.patch, patchedItem.patch, patchedItem.patched);
@@ -156,41 +164,45 @@ public abstract class AbstractPatcher<T> {
 
 	}
 
+	protected final Logger getLogger() {
+		return logger;
+	}
+
 	protected final Context getContext() {
 		return context;
 	}
 
-	protected final Map<String, T> getSourceMap() {
+	protected final Map<K, T> getSourceMap() {
 		return sourceMap;
 	}
 
-	protected final boolean targetExists(String targetId) {
+	protected final boolean targetExists(K targetId) {
 		return sourceMap.get(targetId) != null;
 	}
 
-	protected final T findTarget(String targetId, boolean inPlaceEdit) throws PatchException {
+	protected final T findTarget(K targetId, boolean inPlaceEdit) throws PatchException {
 		T target = sourceMap.get(targetId);
 		if (target == null) throw new PatchException("target not found");
 		addTarget(targetId, inPlaceEdit);
 		return target;
 	}
 
-	protected final void addTarget(String targetId, boolean inPlaceEdit) throws PatchException {
+	protected final void addTarget(K targetId, boolean inPlaceEdit) throws PatchException {
 		if (targetedMap.put(targetId, inPlaceEdit) != null) throw new PatchException("already targeted");
 	}
 
 	protected final void addPatched(T patch, T patched) throws PatchException {
-		String id = getId(patched);
+		K id = getId(patched);
 		PatchedItem<T> patchedItem = new PatchedItem<>(patch, patched);
 		if (patchedMap.put(id, patchedItem) != null) throw new PatchException("already injected");
 	}
 
 	// Handlers
 
-	protected abstract String getId(T item);
-	protected abstract void setupLogPrefix(String id, T item, T patch, T patched);
+	protected abstract K getId(T item);
+	protected abstract void setupLogPrefix(K id, T item, T patch, T patched);
 
-	protected abstract void onPatch(String patchId, T patch) throws PatchException;
-	protected void onEffectiveReplacement(String id, T patch, T patched, T original, boolean inPlaceEdit) throws PatchException {}
+	protected abstract void onPatch(K patchId, T patch) throws PatchException;
+	protected void onEffectiveReplacement(K id, T patch, T patched, T original, boolean inPlaceEdit) throws PatchException {}
 
 }
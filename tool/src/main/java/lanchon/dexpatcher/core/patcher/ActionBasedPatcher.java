@@ -13,10 +13,11 @@ package lanchon.dexpatcher.core.patcher;
 import lanchon.dexpatcher.core.Action;
 import lanchon.dexpatcher.core.Context;
 import lanchon.dexpatcher.core.PatchException;
+import lanchon.dexpatcher.core.logger.Logger;
 
 import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 
-public abstract class ActionBasedPatcher<T, C extends ActionBasedPatcher.ActionContext> extends AbstractPatcher<T> {
+public abstract class ActionBasedPatcher<K, T, C extends ActionBasedPatcher.ActionContext> extends AbstractPatcher<K, T> {
 
 	public interface ActionContext {
 		Action getAction();
@@ -26,14 +27,22 @@ public abstract class ActionBasedPatcher<T, C extends ActionBasedPatcher.ActionC
 		super(context);
 	}
 
-	protected ActionBasedPatcher(AbstractPatcher<?> parent) {
+	protected ActionBasedPatcher(Context context, Logger logger) {
+		super(context, logger);
+	}
+
+	protected ActionBasedPatcher(AbstractPatcher<?, ?> parent) {
 		super(parent);
 	}
 
+	protected ActionBasedPatcher(AbstractPatcher<?, ?> parent, Logger logger) {
+		super(parent, logger);
+	}
+
 	// Implementation
 
 	@Override
-	protected void onPatch(String patchId, T patch) throws PatchException {
+	protected void onPatch(K patchId, T patch) throws PatchException {
 		C actionContext = getActionContext(patchId, patch);
 		onPrepare(patchId, patch, actionContext);
 		Action action = actionContext.getAction();
@@ -70,48 +79,48 @@ public abstract class ActionBasedPatcher<T, C extends ActionBasedPatcher.ActionC
 
 	// Intermediate Handlers
 
-	protected void onAdd(String patchId, T patch, C actionContext) throws PatchException {
+	protected void onAdd(K patchId, T patch, C actionContext) throws PatchException {
 		T patched = onSimpleAdd(patch, actionContext);
 		addPatched(patch, patched);
 	}
 
-	protected void onEdit(String patchId, T patch, C actionContext) throws PatchException {
-		String targetId = getTargetId(patchId, patch, actionContext);
+	protected void onEdit(K patchId, T patch, C actionContext) throws PatchException {
+		K targetId = getTargetId(patchId, patch, actionContext);
 		boolean inPlace = patchId.equals(targetId);
 		T target = findTarget(targetId, inPlace);
 		T patched = onSimpleEdit(patch, actionContext, target, inPlace);
 		addPatched(patch, patched);
 	}
 
-	protected void onReplace(String patchId, T patch, C actionContext) throws PatchException {
-		String targetId = getTargetId(patchId, patch, actionContext);
+	protected void onReplace(K patchId, T patch, C actionContext) throws PatchException {
+		K targetId = getTargetId(patchId, patch, actionContext);
 		boolean inPlace = patchId.equals(targetId);
 		T target = findTarget(targetId, false);
 		T patched = onSimpleReplace(patch, actionContext, target, inPlace);
 		addPatched(patch, patched);
 	}
 
-	protected void onRemove(String patchId, T patch, C actionContext) throws PatchException {
-		String targetId = getTargetId(patchId, patch, actionContext);
+	protected void onRemove(K patchId, T patch, C actionContext) throws PatchException {
+		K targetId = getTargetId(patchId, patch, actionContext);
 		T target = findTarget(targetId, false);
 		onSimpleRemove(patch, actionContext, target);
 	}
 
-	protected void onIgnore(String patchId, T patch, C actionContext) throws PatchException {}
+	protected void onIgnore(K patchId, T patch, C actionContext) throws PatchException {}
 
-	protected void onWrap(String patchId, T patch, C actionContext) throws PatchException {
+	protected void onWrap(K patchId, T patch, C actionContext) throws PatchException {
 		throw Action.WRAP.invalidAction();
 	}
 
-	protected void onSplice(String patchId, T patch, C actionContext, Action action) throws PatchException {
+	protected void onSplice(K patchId, T patch, C actionContext, Action action) throws PatchException {
 		throw action.invalidAction();
 	}
 
 	// Handlers
 
-	protected abstract C getActionContext(String patchId, T patch) throws PatchException;
-	protected void onPrepare(String patchId, T patch, C actionContext) throws PatchException {}
-	protected abstract String getTargetId(String patchId, T patch, C actionContext) throws PatchException;
+	protected abstract C getActionContext(K patchId, T patch) throws PatchException;
+	protected void onPrepare(K patchId, T patch, C actionContext) throws PatchException {}
+	protected abstract K getTargetId(K patchId, T patch, C actionContext) throws PatchException;
 
 	protected abstract T onSimpleAdd(T patch, C actionContext);
 	protected abstract T onSimpleEdit(T patch, C actionContext, T target, boolean inPlace);
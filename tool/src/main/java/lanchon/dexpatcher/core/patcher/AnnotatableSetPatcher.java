@@ -26,7 +26,7 @@ import org.jf.dexlib2.iface.ClassDef;
 
 import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 
-public abstract class AnnotatableSetPatcher<T extends Annotatable> extends ActionBasedPatcher<T, PatcherAnnotation> {
+public abstract class AnnotatableSetPatcher<K, T extends Annotatable> extends ActionBasedPatcher<K, T, PatcherAnnotation> {
 
 	private ClassDef sourceFileClass;
 	private String sourceFileName;
@@ -35,8 +35,16 @@ public abstract class AnnotatableSetPatcher<T extends Annotatable> extends Actio
 		super(context);
 	}
 
-	protected AnnotatableSetPatcher(AnnotatableSetPatcher<?> parent) {
-		super(parent);
+	protected AnnotatableSetPatcher(Context context, Logger logger) {
+		super(context, logger);
+	}
+
+	protected AnnotatableSetPatcher(AnnotatableSetPatcher<?, ?> parent) {
+		this(parent, parent.getLogger());
+	}
+
+	protected AnnotatableSetPatcher(AnnotatableSetPatcher<?, ?> parent, Logger logger) {
+		super(parent, logger);
 		sourceFileClass = parent.sourceFileClass;
 		sourceFileName = parent.sourceFileName;
 	}
@@ -88,7 +96,7 @@ public abstract class AnnotatableSetPatcher<T extends Annotatable> extends Actio
 		}
 	}
 
-	protected final boolean shouldLogTarget(String patchId, String targetId) {
+	protected final boolean shouldLogTarget(K patchId, K targetId) {
 		return !patchId.equals(targetId);
 	}
 
@@ -99,7 +107,7 @@ public abstract class AnnotatableSetPatcher<T extends Annotatable> extends Actio
 	// Implementation
 
 	@Override
-	protected PatcherAnnotation getActionContext(String patchId, T patch) throws PatchException {
+	protected PatcherAnnotation getActionContext(K patchId, T patch) throws PatchException {
 		Set<? extends Annotation> rawAnnotations = patch.getAnnotations();
 		PatcherAnnotation annotation = PatcherAnnotation.parse(getContext().getActionParser(), rawAnnotations);
 		if (annotation == null) annotation = new PatcherAnnotation(getDefaultAction(patchId, patch), rawAnnotations);
@@ -135,7 +143,7 @@ public abstract class AnnotatableSetPatcher<T extends Annotatable> extends Actio
 	}
 
 	@Override
-	protected void onEffectiveReplacement(String id, T patch, T patched, T original, boolean inPlaceEdit) {
+	protected void onEffectiveReplacement(K id, T patch, T patched, T original, boolean inPlaceEdit) {
 		// Avoid duplicated messages if not renaming.
 		if (!inPlaceEdit) {
 			int oldFlags = getAccessFlags(original);
@@ -150,6 +158,6 @@ public abstract class AnnotatableSetPatcher<T extends Annotatable> extends Actio
 
 	protected abstract String getItemLabel();
 	protected abstract int getAccessFlags(T item);
-	protected abstract Action getDefaultAction(String patchId, T patch) throws PatchException;
+	protected abstract Action getDefaultAction(K patchId, T patch) throws PatchException;
 
 }
@@ -10,33 +10,127 @@
 
 package lanchon.dexpatcher.core.patcher;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import lanchon.dexpatcher.core.Action;
 import lanchon.dexpatcher.core.Context;
 import lanchon.dexpatcher.core.Marker;
 import lanchon.dexpatcher.core.PatchException;
 import lanchon.dexpatcher.core.PatcherAnnotation;
+import lanchon.dexpatcher.core.logger.BufferedLogger;
 import lanchon.dexpatcher.core.model.BasicClassDef;
 import lanchon.dexpatcher.core.util.DexUtils;
 import lanchon.dexpatcher.core.util.Id;
 import lanchon.dexpatcher.core.util.InvalidTypeDescriptorException;
 import lanchon.dexpatcher.core.util.Label;
+import lanchon.dexpatcher.core.util.MemberKey;
 import lanchon.dexpatcher.core.util.SimpleTypeRewriter;
 import lanchon.dexpatcher.core.util.Target;
 
 import org.jf.dexlib2.iface.Annotation;
 import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
 
 import static lanchon.dexpatcher.core.PatcherAnnotation.*;
 
 // TODO: Warn about changes in superclass and interfaces.
 
-public class ClassSetPatcher extends AnnotatableSetPatcher<ClassDef> {
+public class ClassSetPatcher extends AnnotatableSetPatcher<String, ClassDef> {
+
+	// Member patching of edited classes can be run concurrently. In that case, log messages are
+	// buffered and replayed in order after all tasks complete, to keep the output deterministic.
+
+	private static class MemberSetTask extends RecursiveAction {
+
+		private final FieldSetPatcher fieldSetPatcher;
+		private final MethodSetPatcher methodSetPatcher;
+		private final ClassDef target;
+		private final ClassDef patch;
+
+		private Collection<Field> fields;
+		private Collection<Method> methods;
+
+		MemberSetTask(FieldSetPatcher fieldSetPatcher, MethodSetPatcher methodSetPatcher, ClassDef target,
+				ClassDef patch) {
+			this.fieldSetPatcher = fieldSetPatcher;
+			this.methodSetPatcher = methodSetPatcher;
+			this.target = target;
+			this.patch = patch;
+		}
+
+		@Override
+		protected void compute() {
+			fields = Collections.unmodifiableCollection(
+					fieldSetPatcher.process(target.getFields(), patch.getFields()));
+			methods = Collections.unmodifiableCollection(
+					methodSetPatcher.process(target.getMethods(), patch.getMethods()));
+		}
+
+		Collection<Field> getFields() {
+			return new AbstractCollection<Field>() {
+				@Override
+				public Iterator<Field> iterator() {
+					join();
+					return fields.iterator();
+				}
+				@Override
+				public int size() {
+					join();
+					return fields.size();
+				}
+			};
+		}
+
+		Collection<Method> getMethods() {
+			return new AbstractCollection<Method>() {
+				@Override
+				public Iterator<Method> iterator() {
+					join();
+					return methods.iterator();
+				}
+				@Override
+				public int size() {
+					join();
+					return methods.size();
+				}
+			};
+		}
+
+	}
+
+	private MemberKey.Interner memberKeyInterner;
+	private final BufferedLogger bufferedLogger;
+	private final ForkJoinPool memberSetPool;
+
+	private List<MemberSetTask> memberSetTasks;
 
 	public ClassSetPatcher(Context context) {
 		super(context);
+		bufferedLogger = null;
+		memberSetPool = null;
+	}
+
+	public ClassSetPatcher(Context context, ForkJoinPool memberSetPool) {
+		this(context, new BufferedLogger(context.getLogger().getLogLevel()), memberSetPool);
+	}
+
+	private ClassSetPatcher(Context context, BufferedLogger bufferedLogger, ForkJoinPool memberSetPool) {
+		super(context, bufferedLogger);
+		this.bufferedLogger = bufferedLogger;
+		this.memberSetPool = memberSetPool;
+	}
+
+	MemberKey.Interner getMemberKeyInterner() {
+		return memberKeyInterner;
 	}
 
 	// Logging
@@ -55,6 +149,29 @@ public class ClassSetPatcher extends AnnotatableSetPatcher<ClassDef> {
 
 	// Implementation
 
+	@Override
+	public Collection<ClassDef> process(Iterable<? extends ClassDef> sourceSet, int sourceSetSizeHint,
+			Iterable<? extends ClassDef> patchSet, int patchSetSizeHint) {
+		// Member keys are only compared while patching, so their prototypes are only interned meanwhile.
+		memberKeyInterner = new MemberKey.Interner();
+		try {
+			if (memberSetPool == null) return super.process(sourceSet, sourceSetSizeHint, patchSet, patchSetSizeHint);
+			memberSetTasks = new ArrayList<>();
+			try {
+				Collection<ClassDef> patchedSet = super.process(sourceSet, sourceSetSizeHint, patchSet, patchSetSizeHint);
+				for (MemberSetTask task : memberSetTasks) task.join();
+				return patchedSet;
+			} finally {
+				// Wait for all tasks before replaying their log messages.
+				for (MemberSetTask task : memberSetTasks) task.quietlyJoin();
+				memberSetTasks = null;
+				bufferedLogger.replay(getContext().getLogger());
+			}
+		} finally {
+			memberKeyInterner = null;
+		}
+	}
+
 	@Override
 	protected final String getId(ClassDef item) {
 		return Id.ofClass(item);
@@ -137,6 +254,38 @@ public class ClassSetPatcher extends AnnotatableSetPatcher<ClassDef> {
 			if (!inPlace) target = SimpleTypeRewriter.renameClass(target, patch.getType());
 		}
 
+		if (hasNoMemberPatches(patch, annotation)) {
+			// The members of the target are kept as they are.
+			return new BasicClassDef(
+					source.getType(),
+					source.getAccessFlags(),
+					source.getSuperclass(),
+					source.getInterfaces(),
+					source.getSourceFile(),
+					annotations,
+					target.getStaticFields(),
+					target.getInstanceFields(),
+					target.getDirectMethods(),
+					target.getVirtualMethods());
+		}
+
+		Collection<Field> fields;
+		Collection<Method> methods;
+		if (memberSetPool == null) {
+			fields = Collections.unmodifiableCollection(new FieldSetPatcher(this, annotation)
+					.process(target.getFields(), patch.getFields()));
+			methods = Collections.unmodifiableCollection(new MethodSetPatcher(this, annotation)
+					.process(target.getMethods(), patch.getMethods()));
+		} else {
+			BufferedLogger segment = bufferedLogger.createSegment();
+			MemberSetTask task = new MemberSetTask(new FieldSetPatcher(this, segment, annotation),
+					new MethodSetPatcher(this, segment, annotation), target, patch);
+			memberSetTasks.add(task);
+			memberSetPool.execute(task);
+			fields = task.getFields();
+			methods = task.getMethods();
+		}
+
 		return new BasicClassDef(
 				source.getType(),
 				source.getAccessFlags(),
@@ -144,11 +293,19 @@ public class ClassSetPatcher extends AnnotatableSetPatcher<ClassDef> {
 				source.getInterfaces(),
 				source.getSourceFile(),
 				annotations,
-				Collections.unmodifiableCollection(new FieldSetPatcher(this, annotation)
-						.process(target.getFields(), patch.getFields())),
-				Collections.unmodifiableCollection(new MethodSetPatcher(this, annotation)
-						.process(target.getMethods(), patch.getMethods())));
+				fields,
+				methods);
+
+	}
+
+	private static boolean hasNoMemberPatches(ClassDef patch, PatcherAnnotation annotation) {
+		Action staticConstructorAction = annotation.getStaticConstructorAction();
+		return (staticConstructorAction == null || staticConstructorAction == Action.NONE) &&
+				isEmpty(patch.getFields()) && isEmpty(patch.getMethods());
+	}
 
+	private static boolean isEmpty(Iterable<?> iterable) {
+		return !iterable.iterator().hasNext();
 	}
 
 	@Override
@@ -13,8 +13,9 @@ package lanchon.dexpatcher.core.patcher;
 import lanchon.dexpatcher.core.Action;
 import lanchon.dexpatcher.core.PatchException;
 import lanchon.dexpatcher.core.PatcherAnnotation;
+import lanchon.dexpatcher.core.logger.Logger;
 import lanchon.dexpatcher.core.model.BasicField;
-import lanchon.dexpatcher.core.util.Id;
+import lanchon.dexpatcher.core.util.MemberKey;
 import lanchon.dexpatcher.core.util.Label;
 
 import org.jf.dexlib2.iface.Field;
@@ -31,18 +32,22 @@ public class FieldSetPatcher extends MemberSetPatcher<Field> {
 		super(parent, annotation);
 	}
 
+	public FieldSetPatcher(ClassSetPatcher parent, Logger logger, PatcherAnnotation annotation) {
+		super(parent, logger, annotation);
+	}
+
 	// Logging
 
 	@Override
-	protected void setupLogPrefix(String id, Field item, Field patch, Field patched) {
+	protected void setupLogPrefix(MemberKey id, Field item, Field patch, Field patched) {
 		setupLogPrefix(getItemLabel() + " '" + Label.ofField(item) + "'");
 	}
 
 	// Implementation
 
 	@Override
-	protected final String getId(Field item) {
-		return Id.ofField(item);
+	protected final MemberKey getId(Field item) {
+		return getMemberKeyInterner().ofField(item);
 	}
 
 	@Override
@@ -51,15 +56,15 @@ public class FieldSetPatcher extends MemberSetPatcher<Field> {
 	}
 
 	@Override
-	protected void onPrepare(String patchId, Field patch, PatcherAnnotation annotation) throws PatchException {
+	protected void onPrepare(MemberKey patchId, Field patch, PatcherAnnotation annotation) throws PatchException {
 		if (annotation.getAction() == Action.REPLACE) throw invalidAnnotation(Action.REPLACE);
 		super.onPrepare(patchId, patch, annotation);
 	}
 
 	@Override
-	protected String getTargetId(String patchId, Field patch, PatcherAnnotation annotation) {
+	protected MemberKey getTargetId(MemberKey patchId, Field patch, PatcherAnnotation annotation) {
 		String target = annotation.getTarget();
-		String targetId = (target != null) ? Id.ofField(patch, target) : patchId;
+		MemberKey targetId = (target != null) ? getMemberKeyInterner().ofField(patch, target) : patchId;
 		if (shouldLogTarget(patchId, targetId)) {
 			extendLogPrefixWithTargetLabel(Label.ofTargetMember(target));
 		}
@@ -14,21 +14,30 @@ import lanchon.dexpatcher.core.Action;
 import lanchon.dexpatcher.core.Marker;
 import lanchon.dexpatcher.core.PatchException;
 import lanchon.dexpatcher.core.PatcherAnnotation;
+import lanchon.dexpatcher.core.logger.Logger;
+import lanchon.dexpatcher.core.util.MemberKey;
 
 import org.jf.dexlib2.iface.Member;
 
 import static lanchon.dexpatcher.core.PatcherAnnotation.*;
 import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 
-public abstract class MemberSetPatcher<T extends Member> extends AnnotatableSetPatcher<T> {
+public abstract class MemberSetPatcher<T extends Member> extends AnnotatableSetPatcher<MemberKey, T> {
 
 	protected final Action explicitStaticConstructorAction;
 	protected final Action resolvedStaticConstructorAction;     // not null
 	protected final Action explicitDefaultAction;
 	protected final Action resolvedDefaultAction;               // not null
 
+	private final MemberKey.Interner memberKeyInterner;
+
 	public MemberSetPatcher(ClassSetPatcher parent, PatcherAnnotation annotation) {
-		super(parent);
+		this(parent, parent.getLogger(), annotation);
+	}
+
+	public MemberSetPatcher(ClassSetPatcher parent, Logger logger, PatcherAnnotation annotation) {
+		super(parent, logger);
+		memberKeyInterner = parent.getMemberKeyInterner();
 		Action defaultAction = Action.NONE;
 		Action sca = annotation.getStaticConstructorAction();
 		Action da = annotation.getDefaultAction();
@@ -38,6 +47,10 @@ public abstract class MemberSetPatcher<T extends Member> extends AnnotatableSetP
 		resolvedStaticConstructorAction = (sca != null) ? sca : resolvedDefaultAction;
 	}
 
+	protected final MemberKey.Interner getMemberKeyInterner() {
+		return memberKeyInterner;
+	}
+
 	// Implementation
 
 	@Override
@@ -46,14 +59,14 @@ public abstract class MemberSetPatcher<T extends Member> extends AnnotatableSetP
 	}
 
 	@Override
-	protected Action getDefaultAction(String patchId, T patch) throws PatchException {
+	protected Action getDefaultAction(MemberKey patchId, T patch) throws PatchException {
 		if (resolvedDefaultAction == Action.NONE) throw new PatchException("no action defined");
 		log(INFO, "default " + resolvedDefaultAction.getLabel());
 		return resolvedDefaultAction;
 	}
 
 	@Override
-	protected void onPrepare(String patchId, T patch, PatcherAnnotation annotation) throws PatchException {
+	protected void onPrepare(MemberKey patchId, T patch, PatcherAnnotation annotation) throws PatchException {
 		if (annotation.getTargetClass() != null) throw invalidElement(Marker.ELEM_TARGET_CLASS);
 		if (annotation.getStaticConstructorAction() != null) throw invalidElement(Marker.ELEM_STATIC_CONSTRUCTOR_ACTION);
 		if (annotation.getDefaultAction() != null) throw invalidElement(Marker.ELEM_DEFAULT_ACTION);
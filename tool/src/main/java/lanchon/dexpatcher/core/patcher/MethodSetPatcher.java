@@ -19,10 +19,11 @@ import lanchon.dexpatcher.core.Context;
 import lanchon.dexpatcher.core.Marker;
 import lanchon.dexpatcher.core.PatchException;
 import lanchon.dexpatcher.core.PatcherAnnotation;
+import lanchon.dexpatcher.core.logger.Logger;
 import lanchon.dexpatcher.core.model.BasicMethod;
 import lanchon.dexpatcher.core.model.BasicMethodImplementation;
 import lanchon.dexpatcher.core.util.DexUtils;
-import lanchon.dexpatcher.core.util.Id;
+import lanchon.dexpatcher.core.util.MemberKey;
 import lanchon.dexpatcher.core.util.Label;
 
 import org.jf.dexlib2.Opcode;
@@ -64,6 +65,10 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 		super(parent, annotation);
 	}
 
+	public MethodSetPatcher(ClassSetPatcher parent, Logger logger, PatcherAnnotation annotation) {
+		super(parent, logger, annotation);
+	}
+
 	// Debug Info
 
 	protected void setSourceFileMethod(Method sourceFileMethod) {
@@ -102,7 +107,7 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 	}
 
 	@Override
-	protected void setupLogPrefix(String id, Method item, Method patch, Method patched) {
+	protected void setupLogPrefix(MemberKey id, Method item, Method patch, Method patched) {
 		setupLogPrefix(getItemLabel() + " '" + Label.ofMethod(item) + "'");
 		setSourceFileMethod(patch);
 	}
@@ -122,8 +127,8 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 	}
 
 	@Override
-	protected final String getId(Method item) {
-		return Id.ofMethod(item);
+	protected final MemberKey getId(Method item) {
+		return getMemberKeyInterner().ofMethod(item);
 	}
 
 	@Override
@@ -132,11 +137,11 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 	}
 
 	@Override
-	protected Action getDefaultAction(String patchId, Method patch) throws PatchException {
+	protected Action getDefaultAction(MemberKey patchId, Method patch) throws PatchException {
 		if (DexUtils.isStaticConstructor(patch)) {
 			staticConstructorFound = true;
 			if (resolvedStaticConstructorAction == Action.NONE) {
-				Action action = targetExists(Id.STATIC_CONSTRUCTOR) ? Action.APPEND : Action.ADD;
+				Action action = targetExists(getMemberKeyInterner().ofStaticConstructor()) ? Action.APPEND : Action.ADD;
 				log(INFO, "implicit " + action.getLabel() + " of static constructor");
 				return action;
 			}
@@ -153,18 +158,18 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 	}
 
 	@Override
-	protected String getTargetId(String patchId, Method patch, PatcherAnnotation annotation) {
+	protected MemberKey getTargetId(MemberKey patchId, Method patch, PatcherAnnotation annotation) {
 		String target = annotation.getTarget();
 		String resolvedTarget = (target != null) ? target : patch.getName();
-		String targetId;
+		MemberKey targetId;
 		String targetLabel;
 		if (isTaggedByLastParameter(patch, true)) {
 			ArrayList<MethodParameter> parameters = new ArrayList<>(patch.getParameters());
 			parameters.remove(parameters.size() - 1);
-			targetId = Id.ofMethod(parameters, patch.getReturnType(), resolvedTarget);
+			targetId = getMemberKeyInterner().ofMethod(parameters, patch.getReturnType(), resolvedTarget);
 			targetLabel = Label.ofMethod(parameters, patch.getReturnType(), resolvedTarget);
 		} else {
-			targetId = (target != null) ? Id.ofMethod(patch, target) : patchId;
+			targetId = (target != null) ? getMemberKeyInterner().ofMethod(patch, target) : patchId;
 			targetLabel = Label.ofTargetMember(resolvedTarget);
 		}
 		if (shouldLogTarget(patchId, targetId)) {
@@ -244,7 +249,7 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 	// Wrap
 
 	@Override
-	protected void onWrap(String patchId, Method patch, PatcherAnnotation annotation) throws PatchException {
+	protected void onWrap(MemberKey patchId, Method patch, PatcherAnnotation annotation) throws PatchException {
 
 		if (DexUtils.isStaticConstructor(patch) || DexUtils.isInstanceConstructor(patch)) {
 			throw Action.WRAP.invalidAction();
@@ -277,7 +282,7 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 	// Prepend and Append
 
 	@Override
-	protected void onSplice(String patchId, Method patch, PatcherAnnotation annotation, Action action)
+	protected void onSplice(MemberKey patchId, Method patch, PatcherAnnotation annotation, Action action)
 			throws PatchException {
 
 		if (DexUtils.isInstanceConstructor(patch)) {
@@ -326,10 +331,10 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 
 	// Helpers
 
-	private Method findTargetNonNative(String patchId, Method patch, PatcherAnnotation annotation)
+	private Method findTargetNonNative(MemberKey patchId, Method patch, PatcherAnnotation annotation)
 			throws PatchException {
 		if (NATIVE.isSet(patch.getAccessFlags())) throw new PatchException("patch method is native");
-		String targetId = getTargetId(patchId, patch, annotation);
+		MemberKey targetId = getTargetId(patchId, patch, annotation);
 		Method target = findTarget(targetId, false);
 		if (NATIVE.isSet(target.getAccessFlags())) throw new PatchException("target method is native");
 		return target;
@@ -345,7 +350,7 @@ public class MethodSetPatcher extends MemberSetPatcher<Method> {
 		int n = 1;
 		String name = baseName;
 		for (;;) {
-			if (!targetExists(Id.ofMethod(base, name))) return name;
+			if (!targetExists(getMemberKeyInterner().ofMethod(base, name))) return name;
 			n++;
 			name = baseName + n;
 		}
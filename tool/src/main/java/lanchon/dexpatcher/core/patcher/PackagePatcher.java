@@ -10,6 +10,14 @@
 
 package lanchon.dexpatcher.core.patcher;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import lanchon.dexpatcher.core.Context;
 import lanchon.dexpatcher.core.Marker;
 import lanchon.dexpatcher.core.PatchException;
@@ -28,12 +36,31 @@ public class PackagePatcher extends ClassSetPatcher {
 
 	private boolean processingPackage;
 
+	// An index of the source type ids sorted by id, built on the first package removal.
+	private String[] sourceIds;
+	private int[] sortedSourceIndexes;
+
 	public PackagePatcher(Context context) {
 		super(context);
 	}
 
+	public PackagePatcher(Context context, ForkJoinPool memberSetPool) {
+		super(context, memberSetPool);
+	}
+
 	// Implementation
 
+	@Override
+	public Collection<ClassDef> process(Iterable<? extends ClassDef> sourceSet, int sourceSetSizeHint,
+			Iterable<? extends ClassDef> patchSet, int patchSetSizeHint) {
+		try {
+			return super.process(sourceSet, sourceSetSizeHint, patchSet, patchSetSizeHint);
+		} finally {
+			sourceIds = null;
+			sortedSourceIndexes = null;
+		}
+	}
+
 	@Override
 	protected void onPrepare(String patchId, ClassDef patch, PatcherAnnotation annotation) throws PatchException {
 		processingPackage = DexUtils.isPackageId(patchId);
@@ -84,16 +111,76 @@ public class PackagePatcher extends ClassSetPatcher {
 	private void removePackage(String targetId, boolean recursive) throws PatchException {
 		int prefixLength = targetId.length() - (Marker.NAME_PACKAGE_INFO.length() + 1);
 		String prefix = targetId.substring(0, prefixLength);
-		for (String id: getSourceMap().keySet()) {
-			if (id.startsWith(prefix) && (recursive || id.indexOf('/', prefixLength) < 0) && id.endsWith(";")) {
-				try {
-					addTarget(id, false);
-					if (isLogging(DEBUG)) log(DEBUG, "remove type '" + Label.fromClassId(id) + "'");
-				} catch (PatchException e) {
-					log(ERROR, "already targeted type '" + Label.fromClassId(id) + "'");
-				}
+		if (sourceIds == null) buildSourceIndex();
+		// The types of a package and its subpackages are contiguous in the index.
+		List<Integer> matches = new ArrayList<>();
+		int end = sortedSourceIndexes.length;
+		for (int i = findStart(prefix); i < end; ) {
+			String id = getSortedSourceId(i);
+			if (!id.startsWith(prefix)) break;
+			int slash = id.indexOf('/', prefixLength);
+			if (!recursive && slash >= 0) {
+				i = findEnd(id.substring(0, slash + 1), i);
+				continue;
 			}
+			if (id.endsWith(";")) matches.add(sortedSourceIndexes[i]);
+			i++;
+		}
+		// Remove types in source order.
+		Collections.sort(matches);
+		for (int index : matches) {
+			String id = sourceIds[index];
+			try {
+				addTarget(id, false);
+				if (isLogging(DEBUG)) log(DEBUG, "remove type '" + Label.fromClassId(id) + "'");
+			} catch (PatchException e) {
+				log(ERROR, "already targeted type '" + Label.fromClassId(id) + "'");
+			}
+		}
+	}
+
+	private void buildSourceIndex() {
+		final String[] ids = getSourceMap().keySet().toArray(new String[0]);
+		Integer[] indexes = new Integer[ids.length];
+		for (int i = 0; i < indexes.length; i++) indexes[i] = i;
+		Arrays.sort(indexes, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return ids[o1].compareTo(ids[o2]);
+			}
+		});
+		int[] sortedIndexes = new int[indexes.length];
+		for (int i = 0; i < indexes.length; i++) sortedIndexes[i] = indexes[i];
+		sourceIds = ids;
+		sortedSourceIndexes = sortedIndexes;
+	}
+
+	private String getSortedSourceId(int i) {
+		return sourceIds[sortedSourceIndexes[i]];
+	}
+
+	// Returns the position of the first id that is not less than the prefix.
+	private int findStart(String prefix) {
+		int low = 0;
+		int high = sortedSourceIndexes.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getSortedSourceId(middle).compareTo(prefix) < 0) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	// Returns the position of the first id after a given position that does not start with the prefix.
+	private int findEnd(String prefix, int start) {
+		int low = start;
+		int high = sortedSourceIndexes.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getSortedSourceId(middle).startsWith(prefix)) low = middle + 1;
+			else high = middle;
 		}
+		return low;
 	}
 
 }
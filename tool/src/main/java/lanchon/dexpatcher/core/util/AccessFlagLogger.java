@@ -82,7 +82,7 @@ public abstract class AccessFlagLogger {
 		throw new AssertionError("Unexpected scope");
 	}
 
-	public void allFlags(AnnotatableSetPatcher<?> patcher, boolean keepInterface, boolean ensureInterface,
+	public void allFlags(AnnotatableSetPatcher<?, ?> patcher, boolean keepInterface, boolean ensureInterface,
 			boolean keepImplementation, Logger.Level warningLevel) {
 
 		//if (!(keepInterface || keepImplementation)) {
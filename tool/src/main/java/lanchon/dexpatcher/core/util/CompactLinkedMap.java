@@ -0,0 +1,373 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.core.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// An insertion-ordered hash map that keeps its entries in arrays indexed by an open-addressing
+// table of ints, so that puts do not allocate entry nodes. Small maps skip the table and the
+// hashes and scan the entries instead, and the arrays are only allocated on the first put.
+// Like a LinkedHashMap, replacing a value keeps the position of the key and removing a key
+// and putting it again moves it to the end. Null keys are not supported.
+
+public final class CompactLinkedMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int MIN_CAPACITY = 4;
+	private static final int MAX_SCAN_CAPACITY = 8;
+
+	private static final Object REMOVED = new Object();
+
+	private Object[] entries;       // keys and values interleaved, null until the first put
+	private int[] hashes;           // null when scanning
+	private int[] slots;            // null when scanning
+	private int capacity;
+	private int mask;
+	private int shift;
+	private int count;
+	private int size;
+	private int modCount;
+
+	private Set<K> keySet;
+	private Collection<V> valueCollection;
+	private Set<Map.Entry<K, V>> entrySet;
+
+	public CompactLinkedMap() {
+		this(MIN_CAPACITY);
+	}
+
+	public CompactLinkedMap(int expectedSize) {
+		capacity = Math.max(expectedSize, MIN_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		this.capacity = capacity;
+		entries = new Object[2 * capacity];
+		if (capacity > MAX_SCAN_CAPACITY) {
+			hashes = new int[capacity];
+			int tableSize = 2;
+			while (tableSize < 2 * capacity) tableSize <<= 1;
+			slots = new int[tableSize];
+			mask = tableSize - 1;
+			shift = Integer.numberOfLeadingZeros(mask);
+		} else {
+			hashes = null;
+			slots = null;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int index = indexOf(key);
+		return (index >= 0) ? (V) entries[2 * index + 1] : null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		int hash = key.hashCode();
+		int index = indexOf(key, hash);
+		if (index >= 0) {
+			V previous = (V) entries[2 * index + 1];
+			entries[2 * index + 1] = value;
+			return previous;
+		}
+		if (entries == null) {
+			allocate(capacity);
+		} else if (count == capacity) {
+			// Compact in place if at least half the entries were removed, otherwise grow.
+			rebuild((size <= count / 2) ? capacity : 2 * capacity);
+		}
+		index = count++;
+		entries[2 * index] = key;
+		entries[2 * index + 1] = value;
+		if (slots != null) {
+			hashes[index] = hash;
+			addSlot(index, hash);
+		}
+		size++;
+		modCount++;
+		return null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int index = indexOf(key);
+		if (index < 0) return null;
+		V previous = (V) entries[2 * index + 1];
+		removeAt(index);
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		if (entries == null) return;
+		Arrays.fill(entries, 0, 2 * count, null);
+		if (slots != null) Arrays.fill(slots, 0);
+		count = 0;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<K> keySet() {
+		if (keySet == null) {
+			keySet = new AbstractSet<K>() {
+				@Override
+				public Iterator<K> iterator() {
+					return new EntryIterator<K>() {
+						@Override
+						@SuppressWarnings("unchecked")
+						K get(int index) {
+							return (K) entries[2 * index];
+						}
+					};
+				}
+				@Override
+				public int size() {
+					return size;
+				}
+				@Override
+				public boolean contains(Object o) {
+					return containsKey(o);
+				}
+			};
+		}
+		return keySet;
+	}
+
+	@Override
+	public Collection<V> values() {
+		if (valueCollection == null) {
+			valueCollection = new AbstractCollection<V>() {
+				@Override
+				public Iterator<V> iterator() {
+					return new EntryIterator<V>() {
+						@Override
+						@SuppressWarnings("unchecked")
+						V get(int index) {
+							return (V) entries[2 * index + 1];
+						}
+					};
+				}
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return valueCollection;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new EntrySetIterator();
+				}
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	private int indexOf(Object key) {
+		if (slots == null) return scan(key);
+		return indexOf(key, key.hashCode());
+	}
+
+	private int scan(Object key) {
+		for (int index = 0; index < count; index++) {
+			Object k = entries[2 * index];
+			if (k == key || key.equals(k)) return index;
+		}
+		return -1;
+	}
+
+	private int indexOf(Object key, int hash) {
+		if (slots == null) return scan(key);
+		for (int slot = getFirstSlot(hash);; slot = (slot + 1) & mask) {
+			int index = slots[slot] - 1;
+			if (index < 0) return -1;
+			if (hashes[index] == hash && key.equals(entries[2 * index])) return index;
+		}
+	}
+
+	private void addSlot(int index, int hash) {
+		int slot = getFirstSlot(hash);
+		while (slots[slot] != 0) slot = (slot + 1) & mask;
+		slots[slot] = index + 1;
+	}
+
+	private void removeAt(int index) {
+		// The slot is left pointing to the removed entry until the next rebuild.
+		entries[2 * index] = REMOVED;
+		entries[2 * index + 1] = null;
+		size--;
+		modCount++;
+	}
+
+	private void rebuild(int capacity) {
+		Object[] oldEntries = entries;
+		int[] oldHashes = hashes;
+		int oldCount = count;
+		if (capacity != this.capacity) allocate(capacity);
+		else if (slots != null) Arrays.fill(slots, 0);
+		int index = 0;
+		for (int i = 0; i < oldCount; i++) {
+			Object key = oldEntries[2 * i];
+			if (key == REMOVED) continue;
+			entries[2 * index] = key;
+			entries[2 * index + 1] = oldEntries[2 * i + 1];
+			if (slots != null) {
+				// Scanning maps do not keep hashes.
+				int hash = (oldHashes != null) ? oldHashes[i] : key.hashCode();
+				hashes[index] = hash;
+				addSlot(index, hash);
+			}
+			index++;
+		}
+		if (entries == oldEntries) Arrays.fill(entries, 2 * index, 2 * oldCount, null);
+		count = index;
+	}
+
+	private int getFirstSlot(int hash) {
+		return (hash * 0x9E3779B9) >>> shift;
+	}
+
+	private abstract class EntryIterator<E> implements Iterator<E> {
+
+		int next;
+		int last = -1;
+		int expectedModCount = modCount;
+
+		EntryIterator() {
+			skipRemoved();
+		}
+
+		abstract E get(int index);
+
+		private void skipRemoved() {
+			while (next < count && entries[2 * next] == REMOVED) next++;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		@Override
+		public E next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			if (next >= count) throw new NoSuchElementException();
+			last = next++;
+			skipRemoved();
+			return get(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			removeAt(last);
+			last = -1;
+			expectedModCount = modCount;
+		}
+
+	}
+
+	private final class EntrySetIterator extends EntryIterator<Map.Entry<K, V>> {
+
+		@Override
+		Map.Entry<K, V> get(int index) {
+			return new Entry(index);
+		}
+
+	}
+
+	// Entries read and write through to the map and, as with other maps, are only
+	// valid until the next structural modification of the map.
+
+	private final class Entry implements Map.Entry<K, V> {
+
+		private final int index;
+
+		Entry(int index) {
+			this.index = index;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public K getKey() {
+			return (K) entries[2 * index];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V) entries[2 * index + 1];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V setValue(V value) {
+			V previous = (V) entries[2 * index + 1];
+			entries[2 * index + 1] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object value = getValue();
+			return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+
+	}
+
+}
@@ -10,6 +10,8 @@
 
 package lanchon.dexpatcher.core.util;
 
+import java.util.List;
+
 import lanchon.dexpatcher.core.Marker;
 
 import org.jf.dexlib2.iface.ClassDef;
@@ -20,6 +22,16 @@ public class Id {
 
 	public static final String STATIC_CONSTRUCTOR = Marker.NAME_STATIC_CONSTRUCTOR + "..V";
 
+	private static final int[] POWERS_OF_31 = new int[128];
+
+	static {
+		int power = 1;
+		for (int i = 0; i < POWERS_OF_31.length; i++) {
+			POWERS_OF_31[i] = power;
+			power *= 31;
+		}
+	}
+
 	public static String ofClass(ClassDef classDef) {
 		return ofClass(classDef.getType());
 	}
@@ -60,6 +72,63 @@ public class Id {
 		return sb.toString();
 	}
 
+	// The methods below hash and match member ids without building them. Hash codes are those of the
+	// id strings, and are computed from the (usually cached) hash codes of the parts of the ids.
+
+	public static int hashOfField(String type, String name) {
+		return concatHash(concatHash(name.hashCode(), '.'), type);
+	}
+
+	public static int hashOfMethod(List<? extends CharSequence> parameterTypes, String returnType, String name) {
+		int hash = concatHash(name.hashCode(), '.');
+		for (int i = 0, n = parameterTypes.size(); i < n; i++) {
+			hash = concatHash(hash, parameterTypes.get(i).toString());
+		}
+		return concatHash(concatHash(hash, '.'), returnType);
+	}
+
+	public static boolean isField(String id, String type, String name) {
+		int i = name.length();
+		return id.length() == i + 1 + type.length() && id.startsWith(name) && id.charAt(i) == '.' &&
+				id.startsWith(type, i + 1);
+	}
+
+	public static boolean isMethod(String id, List<? extends CharSequence> parameterTypes, String returnType,
+			String name) {
+		int length = id.length();
+		int i = name.length();
+		if (i >= length || id.charAt(i) != '.' || !id.startsWith(name)) return false;
+		i++;
+		for (int j = 0, n = parameterTypes.size(); j < n; j++) {
+			String parameterType = parameterTypes.get(j).toString();
+			if (!id.startsWith(parameterType, i)) return false;
+			i += parameterType.length();
+		}
+		if (i >= length || id.charAt(i) != '.') return false;
+		i++;
+		return length == i + returnType.length() && id.startsWith(returnType, i);
+	}
+
+	private static int concatHash(int hash, String s) {
+		return hash * powerOf31(s.length()) + s.hashCode();
+	}
+
+	private static int concatHash(int hash, char c) {
+		return hash * 31 + c;
+	}
+
+	private static int powerOf31(int exponent) {
+		if (exponent < POWERS_OF_31.length) return POWERS_OF_31[exponent];
+		int power = 1;
+		int base = 31;
+		while (exponent != 0) {
+			if ((exponent & 1) != 0) power *= base;
+			base *= base;
+			exponent >>>= 1;
+		}
+		return power;
+	}
+
 	private Id() {}
 
 }
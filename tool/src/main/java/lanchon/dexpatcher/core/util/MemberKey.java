@@ -0,0 +1,182 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.core.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lanchon.dexpatcher.core.Marker;
+
+import org.jf.dexlib2.iface.reference.FieldReference;
+import org.jf.dexlib2.iface.reference.MethodReference;
+
+// Identifies a member within a class by name and prototype. Prototypes (field types
+// and method parameter and return types) are interned, so keys compare them by reference.
+// Keys obtained from different interners must not be compared.
+
+public final class MemberKey {
+
+	private static final MethodProto STATIC_CONSTRUCTOR_PROTO = new MethodProto(new String[0], "V");
+
+	public static final class Interner {
+
+		private final ConcurrentHashMap<Object, Object> protos = new ConcurrentHashMap<>();
+		private final ThreadLocal<MethodProtoProbe> probes = new ThreadLocal<MethodProtoProbe>() {
+			@Override
+			protected MethodProtoProbe initialValue() {
+				return new MethodProtoProbe();
+			}
+		};
+		private final MemberKey staticConstructor =
+				new MemberKey(Marker.NAME_STATIC_CONSTRUCTOR, intern(STATIC_CONSTRUCTOR_PROTO));
+
+		public MemberKey ofField(FieldReference field) {
+			return ofField(field.getType(), field.getName());
+		}
+
+		public MemberKey ofField(FieldReference field, String name) {
+			return ofField(field.getType(), name);
+		}
+
+		public MemberKey ofField(String type, String name) {
+			return new MemberKey(name, intern(type));
+		}
+
+		public MemberKey ofMethod(MethodReference method) {
+			return ofMethod(method.getParameterTypes(), method.getReturnType(), method.getName());
+		}
+
+		public MemberKey ofMethod(MethodReference method, String name) {
+			return ofMethod(method.getParameterTypes(), method.getReturnType(), name);
+		}
+
+		public MemberKey ofMethod(List<? extends CharSequence> parameterTypes, String returnType, String name) {
+			// Look up the prototype through a reusable probe and only build it if it is new.
+			MethodProtoProbe probe = probes.get();
+			probe.set(parameterTypes, returnType);
+			Object proto = protos.get(probe);
+			probe.clear();
+			if (proto == null) {
+				int size = parameterTypes.size();
+				String[] types = new String[size];
+				for (int i = 0; i < size; i++) types[i] = parameterTypes.get(i).toString();
+				proto = intern(new MethodProto(types, returnType));
+			}
+			return new MemberKey(name, proto);
+		}
+
+		public MemberKey ofStaticConstructor() {
+			return staticConstructor;
+		}
+
+		private Object intern(Object proto) {
+			Object internedProto = protos.putIfAbsent(proto, proto);
+			return (internedProto != null) ? internedProto : proto;
+		}
+
+	}
+
+	private static final class MethodProto {
+
+		private final String[] parameterTypes;
+		private final String returnType;
+		private final int hashCode;
+
+		MethodProto(String[] parameterTypes, String returnType) {
+			this.parameterTypes = parameterTypes;
+			this.returnType = returnType;
+			hashCode = 31 * Arrays.hashCode(parameterTypes) + returnType.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof MethodProto)) return false;
+			MethodProto that = (MethodProto) o;
+			return hashCode == that.hashCode && returnType.equals(that.returnType) &&
+					Arrays.equals(parameterTypes, that.parameterTypes);
+		}
+
+	}
+
+	// A mutable stand-in for a MethodProto that is only used for lookups.
+	private static final class MethodProtoProbe {
+
+		private List<? extends CharSequence> parameterTypes;
+		private String returnType;
+		private int hashCode;
+
+		void set(List<? extends CharSequence> parameterTypes, String returnType) {
+			this.parameterTypes = parameterTypes;
+			this.returnType = returnType;
+			int parametersHashCode = 1;
+			int size = parameterTypes.size();
+			for (int i = 0; i < size; i++) {
+				parametersHashCode = 31 * parametersHashCode + parameterTypes.get(i).toString().hashCode();
+			}
+			hashCode = 31 * parametersHashCode + returnType.hashCode();
+		}
+
+		void clear() {
+			parameterTypes = null;
+			returnType = null;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof MethodProto)) return false;
+			MethodProto that = (MethodProto) o;
+			if (hashCode != that.hashCode || !returnType.equals(that.returnType)) return false;
+			int size = parameterTypes.size();
+			if (size != that.parameterTypes.length) return false;
+			for (int i = 0; i < size; i++) {
+				if (!parameterTypes.get(i).toString().equals(that.parameterTypes[i])) return false;
+			}
+			return true;
+		}
+
+	}
+
+	private final String name;
+	private final Object proto;
+	private final int hashCode;
+
+	private MemberKey(String name, Object proto) {
+		this.name = name;
+		this.proto = proto;
+		hashCode = 31 * name.hashCode() + proto.hashCode();
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof MemberKey)) return false;
+		MemberKey that = (MemberKey) o;
+		return hashCode == that.hashCode && proto == that.proto && name.equals(that.name);
+	}
+
+}
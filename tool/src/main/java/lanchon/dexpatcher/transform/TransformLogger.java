@@ -10,16 +10,92 @@
 
 package lanchon.dexpatcher.transform;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 
 import lanchon.dexpatcher.core.logger.Logger;
 
 public final class TransformLogger {
 
+	// Buffers hold the messages logged by a thread in order, so that messages logged concurrently
+	// can later be flushed in a stable order with the same deduplication as single-threaded logging.
+
+	public static final class Buffer {
+		private final ArrayList<Logger.Level> levels = new ArrayList<>();
+		private final ArrayList<String> messages = new ArrayList<>();
+		private final HashSet<String> bufferedMessages = new HashSet<>();
+		private void add(Logger.Level level, String message) {
+			if (bufferedMessages.add(message)) {
+				levels.add(level);
+				messages.add(message);
+			}
+		}
+		public int size() {
+			return messages.size();
+		}
+	}
+
+	// Recordings hold the messages logged by a thread on any transform logger while they are
+	// active, so that memoized rewrites can log them again each time their results are reused.
+	// The messages of a nested recording are added to the enclosing one when it stops.
+
+	public static final class Recording {
+		private final Recording parent;
+		private ArrayList<TransformLogger> loggers;
+		private ArrayList<Logger.Level> levels;
+		private ArrayList<String> messages;
+		private Recording(Recording parent) {
+			this.parent = parent;
+		}
+		private void add(TransformLogger logger, Logger.Level level, String message) {
+			if (messages == null) {
+				loggers = new ArrayList<>();
+				levels = new ArrayList<>();
+				messages = new ArrayList<>();
+			}
+			loggers.add(logger);
+			levels.add(level);
+			messages.add(message);
+		}
+		public boolean isEmpty() {
+			return messages == null;
+		}
+		public void replay() {
+			if (messages != null) {
+				int size = messages.size();
+				for (int i = 0; i < size; i++) loggers.get(i).log(levels.get(i), messages.get(i));
+			}
+		}
+	}
+
+	private static final ThreadLocal<Recording> threadRecording = new ThreadLocal<>();
+
+	public static Recording startRecording() {
+		Recording recording = new Recording(threadRecording.get());
+		threadRecording.set(recording);
+		return recording;
+	}
+
+	public static void stopRecording(Recording recording) {
+		Recording parent = recording.parent;
+		if (parent != null) {
+			if (recording.messages != null) {
+				int size = recording.messages.size();
+				for (int i = 0; i < size; i++) {
+					parent.add(recording.loggers.get(i), recording.levels.get(i), recording.messages.get(i));
+				}
+			}
+			threadRecording.set(parent);
+		} else {
+			threadRecording.remove();
+		}
+	}
+
 	private Logger logger;
 	private boolean inUse;
 	private boolean sync;
 	private HashSet<String> loggedMessages;
+	private final ThreadLocal<Buffer> threadBuffer = new ThreadLocal<>();
 
 	public TransformLogger(Logger logger) {
 		this.logger = logger;
@@ -55,7 +131,12 @@ public final class TransformLogger {
 
 	public void log(Logger.Level level, String message) {
 		if (isLogging(level)) {
-			if (sync) {
+			Recording recording = threadRecording.get();
+			if (recording != null) recording.add(this, level, message);
+			Buffer buffer = threadBuffer.get();
+			if (buffer != null) {
+				buffer.add(level, message);
+			} else if (sync) {
 				synchronized (logger) {
 					if (loggedMessages.add(message)) logger.log(level, message);
 				}
@@ -65,6 +146,32 @@ public final class TransformLogger {
 		}
 	}
 
+	public Buffer startBuffering() {
+		Buffer buffer = new Buffer();
+		threadBuffer.set(buffer);
+		return buffer;
+	}
+
+	public void stopBuffering() {
+		threadBuffer.remove();
+	}
+
+	public void logBuffered(Buffer buffer, int start, int end) {
+		for (int i = start; i < end; i++) log(buffer.levels.get(i), buffer.messages.get(i));
+	}
+
+	public void flushBuffer(Buffer buffer) {
+		if (logger != null) {
+			synchronized (logger) {
+				int size = buffer.messages.size();
+				for (int i = 0; i < size; i++) {
+					String message = buffer.messages.get(i);
+					if (loggedMessages.add(message)) logger.log(buffer.levels.get(i), message);
+				}
+			}
+		}
+	}
+
 	public void stopLogging() {
 		logger = null;
 		loggedMessages = null;
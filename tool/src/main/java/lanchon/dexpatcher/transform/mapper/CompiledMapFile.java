@@ -0,0 +1,359 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.transform.mapper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lanchon.dexpatcher.core.util.Id;
+import lanchon.dexpatcher.transform.mapper.map.DexMap;
+import lanchon.dexpatcher.transform.mapper.map.builder.DexMapping;
+
+import org.jf.dexlib2.iface.reference.FieldReference;
+import org.jf.dexlib2.iface.reference.MethodReference;
+
+// A binary form of a direct map and its inverse that is memory-mapped and queried in place.
+// All values are big-endian ints and offsets are relative to the start of the file:
+//
+//   header:  magic, version, direct map offset, inverse map offset
+//   strings: length, UTF-16 chars (each distinct string is stored once)
+//   map:     class count, class record offsets (sorted by class id)
+//   class:   id string, mapping string, field count, method count,
+//            field entries (sorted by field id), method entries (sorted by method id)
+//   entry:   id string, mapping string
+//
+// Ids are those of DexMapping and are sorted in String order, so that lookups can binary
+// search the indexes comparing chars directly against the buffer.
+
+public final class CompiledMapFile {
+
+	private static final int MAGIC = 0x44584D50;    // "DXMP"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int CLASS_HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 8;
+
+	public static boolean isCompiledMapFile(File file) throws IOException {
+		if (!file.isFile()) return false;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return in.readInt() == MAGIC;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	public static CompiledMapFile read(File file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) throw new IOException("compiled map file too large: '" + file + "'");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("invalid compiled map file: '" + file + "'");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported compiled map file version: '" + file + "'");
+		}
+		if (!isValidMap(buffer, buffer.getInt(8)) || !isValidMap(buffer, buffer.getInt(12))) {
+			throw new IOException("invalid or truncated compiled map file: '" + file + "'");
+		}
+		return new CompiledMapFile(buffer);
+	}
+
+	// Checks that the class index and class records of a map are within the buffer. Strings are stored
+	// before the maps, so this also detects truncated files.
+	private static boolean isValidMap(ByteBuffer buffer, int offset) {
+		long limit = buffer.limit();
+		if (offset < HEADER_SIZE || offset + 4L > limit) return false;
+		int classCount = buffer.getInt(offset);
+		if (classCount < 0 || offset + 4L + 4L * classCount > limit) return false;
+		for (int i = 0; i < classCount; i++) {
+			int record = buffer.getInt(offset + 4 + i * 4);
+			if (record < HEADER_SIZE || record + (long) CLASS_HEADER_SIZE > limit) return false;
+			int fieldCount = buffer.getInt(record + 8);
+			int methodCount = buffer.getInt(record + 12);
+			if (fieldCount < 0 || methodCount < 0) return false;
+			if (record + CLASS_HEADER_SIZE + ((long) fieldCount + methodCount) * ENTRY_SIZE > limit) return false;
+		}
+		return true;
+	}
+
+	public static void write(File file, DexMapping directMap, DexMapping inverseMap) throws IOException {
+		new Writer(directMap, inverseMap).write(file);
+	}
+
+	private final DexMap directMap;
+	private final DexMap inverseMap;
+
+	private CompiledMapFile(ByteBuffer buffer) {
+		directMap = new BufferDexMap(buffer, buffer.getInt(8));
+		inverseMap = new BufferDexMap(buffer, buffer.getInt(12));
+	}
+
+	public DexMap getDirectMap() {
+		return directMap;
+	}
+
+	public DexMap getInverseMap() {
+		return inverseMap;
+	}
+
+	private static final class BufferDexMap implements DexMap {
+
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int classCount;
+
+		BufferDexMap(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+			classCount = buffer.getInt(offset);
+		}
+
+		@Override
+		public String getClassMapping(String descriptor) {
+			int record = findClass(Id.ofClass(descriptor));
+			return (record >= 0) ? getString(buffer.getInt(record + 4)) : null;
+		}
+
+		@Override
+		public String getFieldMapping(FieldReference field) {
+			int record = findClass(Id.ofClass(field.getDefiningClass()));
+			if (record < 0) return null;
+			int fieldCount = buffer.getInt(record + 8);
+			return findEntry(record + CLASS_HEADER_SIZE, fieldCount, field.getName(), null, field.getType());
+		}
+
+		@Override
+		public String getMethodMapping(MethodReference method) {
+			int record = findClass(Id.ofClass(method.getDefiningClass()));
+			if (record < 0) return null;
+			int fieldCount = buffer.getInt(record + 8);
+			int methodCount = buffer.getInt(record + 12);
+			int start = record + CLASS_HEADER_SIZE + fieldCount * ENTRY_SIZE;
+			return findEntry(start, methodCount, method.getName(), method.getParameterTypes(), method.getReturnType());
+		}
+
+		private int findClass(String id) {
+			int low = 0;
+			int high = classCount - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int record = buffer.getInt(offset + 4 + middle * 4);
+				int c = compare(buffer.getInt(record), id);
+				if (c < 0) low = middle + 1;
+				else if (c > 0) high = middle - 1;
+				else return record;
+			}
+			return -1;
+		}
+
+		// Parameter types are null for fields.
+		private String findEntry(int start, int count, String name, List<? extends CharSequence> parameterTypes,
+				String type) {
+			int low = 0;
+			int high = count - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int entry = start + middle * ENTRY_SIZE;
+				int c = compareMemberId(buffer.getInt(entry), name, parameterTypes, type);
+				if (c < 0) low = middle + 1;
+				else if (c > 0) high = middle - 1;
+				else return getString(buffer.getInt(entry + 4));
+			}
+			return null;
+		}
+
+		private int compare(int stringOffset, String s) {
+			int length = buffer.getInt(stringOffset);
+			int c = compareChars(stringOffset + 4, length, 0, s);
+			return (c != 0) ? c : length - s.length();
+		}
+
+		// Compares with the id of a member without building the id (see Id.ofField and Id.ofMethod).
+		private int compareMemberId(int stringOffset, String name, List<? extends CharSequence> parameterTypes,
+				String type) {
+			int length = buffer.getInt(stringOffset);
+			int charOffset = stringOffset + 4;
+			int c = compareChars(charOffset, length, 0, name);
+			if (c != 0) return c;
+			int i = name.length();
+			if ((c = compareChars(charOffset, length, i++, ".")) != 0) return c;
+			if (parameterTypes != null) {
+				for (int j = 0, n = parameterTypes.size(); j < n; j++) {
+					String parameterType = parameterTypes.get(j).toString();
+					if ((c = compareChars(charOffset, length, i, parameterType)) != 0) return c;
+					i += parameterType.length();
+				}
+				if ((c = compareChars(charOffset, length, i++, ".")) != 0) return c;
+			}
+			if ((c = compareChars(charOffset, length, i, type)) != 0) return c;
+			return length - (i + type.length());
+		}
+
+		// Compares the chars of a string at a position with those of another string, which may extend past the end.
+		private int compareChars(int charOffset, int length, int start, String s) {
+			for (int i = 0, n = s.length(); i < n; i++) {
+				if (start + i == length) return -1;
+				int c = buffer.getChar(charOffset + (start + i) * 2) - s.charAt(i);
+				if (c != 0) return c;
+			}
+			return 0;
+		}
+
+		private String getString(int stringOffset) {
+			int length = buffer.getInt(stringOffset);
+			char[] chars = new char[length];
+			int charOffset = stringOffset + 4;
+			for (int i = 0; i < length; i++) chars[i] = buffer.getChar(charOffset + i * 2);
+			return new String(chars);
+		}
+
+	}
+
+	private static final class Writer {
+
+		private final DexMapping directMap;
+		private final DexMapping inverseMap;
+		private final Map<String, Integer> strings = new HashMap<>();
+		private final List<String> stringList = new ArrayList<>();
+		private long offset = HEADER_SIZE;
+
+		Writer(DexMapping directMap, DexMapping inverseMap) {
+			this.directMap = directMap;
+			this.inverseMap = inverseMap;
+		}
+
+		void write(File file) throws IOException {
+			addStrings(directMap);
+			addStrings(inverseMap);
+			long directMapOffset = offset;
+			offset += getSize(directMap);
+			long inverseMapOffset = offset;
+			offset += getSize(inverseMap);
+			if (offset > Integer.MAX_VALUE) throw new IOException("compiled map too large");
+			// The file is written under a temporary name and then moved into place, so that readers
+			// never see a partially written file.
+			Path tempFile = File.createTempFile("." + file.getName() + ".", ".tmp",
+					file.getAbsoluteFile().getParentFile()).toPath();
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+						Files.newOutputStream(tempFile)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeInt((int) directMapOffset);
+					out.writeInt((int) inverseMapOffset);
+					for (String s : stringList) {
+						out.writeInt(s.length());
+						out.writeChars(s);
+					}
+					writeMap(out, directMap, (int) directMapOffset);
+					writeMap(out, inverseMap, (int) inverseMapOffset);
+				}
+				Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				tempFile = null;
+			} finally {
+				if (tempFile != null) Files.deleteIfExists(tempFile);
+			}
+		}
+
+		private void addStrings(DexMapping map) throws IOException {
+			for (Map.Entry<String, DexMapping.ClassMapping> entry : map.getClassMappings().entrySet()) {
+				addString(entry.getKey());
+				DexMapping.ClassMapping classMapping = entry.getValue();
+				addString(classMapping.getMapping());
+				for (Map.Entry<String, String> e : classMapping.getFieldMappings().entrySet()) {
+					addString(e.getKey());
+					addString(e.getValue());
+				}
+				for (Map.Entry<String, String> e : classMapping.getMethodMappings().entrySet()) {
+					addString(e.getKey());
+					addString(e.getValue());
+				}
+			}
+		}
+
+		private void addString(String s) throws IOException {
+			if (!strings.containsKey(s)) {
+				strings.put(s, (int) offset);
+				stringList.add(s);
+				offset += 4 + 2L * s.length();
+				if (offset > Integer.MAX_VALUE) throw new IOException("compiled map too large");
+			}
+		}
+
+		private static long getSize(DexMapping map) {
+			Map<String, DexMapping.ClassMapping> classMappings = map.getClassMappings();
+			long size = 4 + 4L * classMappings.size();
+			for (DexMapping.ClassMapping classMapping : classMappings.values()) {
+				int entries = classMapping.getFieldMappings().size() + classMapping.getMethodMappings().size();
+				size += CLASS_HEADER_SIZE + (long) entries * ENTRY_SIZE;
+			}
+			return size;
+		}
+
+		private void writeMap(DataOutputStream out, DexMapping map, int mapOffset) throws IOException {
+			Map<String, DexMapping.ClassMapping> classMappings = map.getClassMappings();
+			List<String> classIds = sortedKeys(classMappings);
+			out.writeInt(classIds.size());
+			int recordOffset = mapOffset + 4 + 4 * classIds.size();
+			for (String classId : classIds) {
+				out.writeInt(recordOffset);
+				DexMapping.ClassMapping classMapping = classMappings.get(classId);
+				int entries = classMapping.getFieldMappings().size() + classMapping.getMethodMappings().size();
+				recordOffset += CLASS_HEADER_SIZE + entries * ENTRY_SIZE;
+			}
+			for (String classId : classIds) {
+				DexMapping.ClassMapping classMapping = classMappings.get(classId);
+				Map<String, String> fieldMappings = classMapping.getFieldMappings();
+				Map<String, String> methodMappings = classMapping.getMethodMappings();
+				out.writeInt(strings.get(classId));
+				out.writeInt(strings.get(classMapping.getMapping()));
+				out.writeInt(fieldMappings.size());
+				out.writeInt(methodMappings.size());
+				writeEntries(out, fieldMappings);
+				writeEntries(out, methodMappings);
+			}
+		}
+
+		private void writeEntries(DataOutputStream out, Map<String, String> mappings) throws IOException {
+			for (String id : sortedKeys(mappings)) {
+				out.writeInt(strings.get(id));
+				out.writeInt(strings.get(mappings.get(id)));
+			}
+		}
+
+		private static List<String> sortedKeys(Map<String, ?> map) {
+			List<String> keys = new ArrayList<>(map.keySet());
+			Collections.sort(keys);
+			return keys;
+		}
+
+	}
+
+}
@@ -15,11 +15,19 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.LineNumberReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import lanchon.dexpatcher.core.logger.Logger;
 import lanchon.dexpatcher.core.util.TypeName;
@@ -29,6 +37,122 @@ import static lanchon.dexpatcher.core.logger.Logger.Level.*;
 
 public final class MapFileReader {
 
+	private static final int CHUNK_LINES = 8192;
+	private static final int MAX_THREADS = 256;
+
+	private static final int TYPE = 0;
+	private static final int FIELD = 1;
+	private static final int METHOD = 2;
+	private static final int SYNTAX_ERROR = 3;
+
+	// A parsed line of a chunk. Types are class descriptors for type mappings and return types for methods.
+	private static final class Entry {
+
+		final int kind;
+		final int index;
+		final String type;
+		final String name;
+		final String newName;
+		final String[] parameterTypes;
+
+		Entry(int kind, int index, String type, String name, String newName, String[] parameterTypes) {
+			this.kind = kind;
+			this.index = index;
+			this.type = type;
+			this.name = name;
+			this.newName = newName;
+			this.parameterTypes = parameterTypes;
+		}
+
+	}
+
+	private static final class Chunk implements Callable<Chunk> {
+
+		final File file;
+		final String fileName;
+		final int firstLine;
+		final List<Entry> entries = new ArrayList<>();
+		List<String> lines;
+
+		Chunk(File file, String fileName, int firstLine, List<String> lines) {
+			this.file = file;
+			this.fileName = fileName;
+			this.firstLine = firstLine;
+			this.lines = lines;
+		}
+
+		@Override
+		public Chunk call() {
+			new MapFileReader(entries).parseLines(lines);
+			return this;
+		}
+
+	}
+
+	private static final class ChunkBuilder {
+
+		final MapBuilder mapBuilder;
+		final Logger logger;
+		final List<Chunk> keptChunks;
+		MapFileReader reader;
+
+		ChunkBuilder(MapBuilder mapBuilder, Logger logger, List<Chunk> keptChunks) {
+			this.mapBuilder = mapBuilder;
+			this.logger = logger;
+			this.keptChunks = keptChunks;
+		}
+
+		void build(Chunk chunk) throws IOException {
+			if (chunk.firstLine == 1) {
+				finish();
+				reader = new MapFileReader(chunk.file, chunk.fileName, mapBuilder, logger);
+			}
+			reader.build(chunk);
+			if (keptChunks != null) {
+				chunk.lines = null;
+				keptChunks.add(chunk);
+			}
+		}
+
+		void finish() throws IOException {
+			if (reader != null) reader.logDeferredMessages();
+			reader = null;
+		}
+
+	}
+
+	// The parsed lines of map files, which can be built again without reading the files. The text of
+	// the lines is not kept; it is read again from the files only if it is needed for messages.
+	public static final class ParsedMapFiles {
+
+		private final List<Chunk> chunks;
+
+		private ParsedMapFiles(List<Chunk> chunks) {
+			this.chunks = chunks;
+		}
+
+		public void build(MapBuilder mapBuilder, Logger logger) throws IOException {
+			ChunkBuilder builder = new ChunkBuilder(mapBuilder, logger, null);
+			for (Chunk chunk : chunks) builder.build(chunk);
+			builder.finish();
+		}
+
+	}
+
+	private static final class DeferredMessage {
+
+		final Logger.Level level;
+		final int lineNumber;
+		final String message;
+
+		DeferredMessage(Logger.Level level, int lineNumber, String message) {
+			this.level = level;
+			this.lineNumber = lineNumber;
+			this.message = message;
+		}
+
+	}
+
 	public static void read(File file, boolean fileNameOnly, MapBuilder mapBuilder, Logger logger) throws IOException {
 		String fileName = fileNameOnly ? file.getName() : file.getPath();
 		read(file, fileName, mapBuilder, logger);
@@ -50,87 +174,346 @@ public final class MapFileReader {
 		new MapFileReader(reader, fileName, mapBuilder, logger).read();
 	}
 
-	private static final String PATTERN_PART_MAPPING = "\\s*->\\s*(?<new>\\S+)\\s*";
+	// Reads map files parsing chunks of lines concurrently if an executor is given. The parsed lines are fed
+	// to the map builder in order by the calling thread, so the resulting map and the logged messages are
+	// those of serial reads.
+	public static void read(Iterable<File> files, boolean fileNameOnly, MapBuilder mapBuilder, Logger logger,
+			ExecutorService executor) throws IOException {
+		read(files, fileNameOnly, new ChunkBuilder(mapBuilder, logger, null), executor);
+	}
 
-	private static final Pattern PATTERN_EMPTY_LINE = Pattern.compile(
-			"\\s*(?:#.*)?"
-	);
+	// Reads map files like the method above, but also keeps their parsed lines.
+	public static ParsedMapFiles readAndKeep(Iterable<File> files, boolean fileNameOnly, MapBuilder mapBuilder,
+			Logger logger, ExecutorService executor) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		read(files, fileNameOnly, new ChunkBuilder(mapBuilder, logger, chunks), executor);
+		return new ParsedMapFiles(chunks);
+	}
 
-	private static final Pattern PATTERN_TYPE = Pattern.compile(
-			"\\s*(?<old>\\S+)" +
-			"\\s*(?:->\\s*(?<new>\\S+?)\\s*(?::\\s*)?)|(?::\\s*)"
-	);
+	private static void read(Iterable<File> files, boolean fileNameOnly, ChunkBuilder builder,
+			ExecutorService executor) throws IOException {
+		Queue<Future<Chunk>> futures = new ArrayDeque<>();
+		int maxPendingChunks = getMaxPendingChunks(executor);
+		try {
+			for (File file : files) {
+				String fileName = fileNameOnly ? file.getName() : file.getPath();
+				try (InputStream inputStream = new FileInputStream(file)) {
+					Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+					LineNumberReader lineReader = new LineNumberReader(reader);
+					int firstLine = 1;
+					List<String> lines = new ArrayList<>(CHUNK_LINES);
+					String line;
+					while ((line = lineReader.readLine()) != null) {
+						lines.add(line);
+						if (lines.size() == CHUNK_LINES) {
+							addChunk(new Chunk(file, fileName, firstLine, lines), futures, maxPendingChunks, builder,
+									executor);
+							firstLine += CHUNK_LINES;
+							lines = new ArrayList<>(CHUNK_LINES);
+						}
+					}
+					if (!lines.isEmpty()) {
+						addChunk(new Chunk(file, fileName, firstLine, lines), futures, maxPendingChunks, builder,
+								executor);
+					}
+				}
+			}
+			while (!futures.isEmpty()) builder.build(getChunk(futures.remove()));
+			builder.finish();
+		} finally {
+			for (Future<Chunk> future : futures) future.cancel(true);
+		}
+	}
 
-	private static final Pattern PATTERN_FIELD = Pattern.compile(
-			"\\s*(?<type>\\S+)" +
-			"\\s+(?<old>(?:\\S*[\\S&&[^)]])|(?:[\\S&&[^(]]*[)]))" +
-			PATTERN_PART_MAPPING
-	);
+	// Reading stops while too many chunks are pending, so that a file is not held in memory as lines
+	// when reading is faster than parsing.
+	private static int getMaxPendingChunks(ExecutorService executor) {
+		int threads = (executor instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) executor).getMaximumPoolSize() :
+				Runtime.getRuntime().availableProcessors();
+		return 2 * Math.max(Math.min(threads, MAX_THREADS), 1);
+	}
 
-	private static final Pattern PATTERN_METHOD = Pattern.compile(
-			"\\s*(?<ret>\\S+)" +
-			"\\s+(?<old>\\S+)" +
-			"\\s*[(]\\s*(?<args>(?:[\\S&&[^(),]]+(?:\\s*,\\s*[\\S&&[^(),]]+)*)?)\\s*[)]" +
-			PATTERN_PART_MAPPING
-	);
+	private static void addChunk(Chunk chunk, Queue<Future<Chunk>> futures, int maxPendingChunks,
+			ChunkBuilder builder, ExecutorService executor) throws IOException {
+		if (executor != null) {
+			futures.add(executor.submit(chunk));
+			// Build the chunks that are done to release their lines early.
+			while (!futures.isEmpty() && futures.peek().isDone()) builder.build(getChunk(futures.remove()));
+			while (futures.size() >= maxPendingChunks) builder.build(getChunk(futures.remove()));
+		} else {
+			builder.build(chunk.call());
+		}
+	}
 
-	private static final Pattern PATTERN_METHOD_PARAMETER_SEPARATOR = Pattern.compile(
-			"\\s*,\\s*"
-	);
+	private static Chunk getChunk(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
 
 	private final LineNumberReader reader;
+	private final File file;
 	private final String fileName;
 	private final MapBuilder mapBuilder;
 	private final Logger logger;
+	private final List<Entry> entries;
+
+	private final List<String> parameterTypes = new ArrayList<>();
 
 	private String line;
+	private int lineIndex;
+	private int lineNumber;
 	private MapBuilder.MemberMapBuilder memberMapBuilder;
+	private List<DeferredMessage> deferredMessages;
 
 	public MapFileReader(LineNumberReader reader, String fileName, MapBuilder mapBuilder, Logger logger) {
 		this.reader = reader;
+		file = null;
 		this.fileName = fileName;
 		this.mapBuilder = mapBuilder;
 		this.logger = logger;
+		entries = null;
+	}
+
+	// Creates a reader that builds the parsed lines of chunks of the file.
+	private MapFileReader(File file, String fileName, MapBuilder mapBuilder, Logger logger) {
+		reader = null;
+		this.file = file;
+		this.fileName = fileName;
+		this.mapBuilder = mapBuilder;
+		this.logger = logger;
+		entries = null;
+	}
+
+	// Creates a parser that records parsed lines instead of building them.
+	private MapFileReader(List<Entry> entries) {
+		reader = null;
+		file = null;
+		fileName = null;
+		mapBuilder = null;
+		logger = null;
+		this.entries = entries;
 	}
 
 	private void read() throws IOException {
 		memberMapBuilder = null;
 		while ((line = reader.readLine()) != null) {
+			lineNumber = reader.getLineNumber();
+			parseLine();
+		}
+	}
+
+	private void parseLines(List<String> lines) {
+		int size = lines.size();
+		for (lineIndex = 0; lineIndex < size; lineIndex++) {
+			line = lines.get(lineIndex);
 			parseLine();
 		}
 	}
 
+	private void build(Chunk chunk) {
+		for (Entry entry : chunk.entries) {
+			line = (chunk.lines != null) ? chunk.lines.get(entry.index) : null;
+			lineNumber = chunk.firstLine + entry.index;
+			switch (entry.kind) {
+				case TYPE:
+					parseType(entry.name, entry.newName);
+					break;
+				case FIELD:
+					parseField(entry.type, entry.name, entry.newName);
+					break;
+				case METHOD:
+					parseMethod(entry.parameterTypes, entry.type, entry.name, entry.newName);
+					break;
+				default:
+					parseSyntaxError();
+					break;
+			}
+		}
+	}
+
 	private void parseLine() {
 		int comment = line.indexOf(';');
-		String l = (comment < 0) ? line : line.substring(0, comment);
-		if (PATTERN_EMPTY_LINE.matcher(l).matches()) return;
-		Matcher type = PATTERN_TYPE.matcher(l);
-		if (type.matches()) {
-			String name = type.group("old");
-			String newName = type.group("new");
-			name = TypeName.toClassDescriptor(name);
-			newName = (newName != null) ? TypeName.toClassDescriptor(newName) : name;
-			parseType(name, newName);
-			return;
+		int end = (comment < 0) ? line.length() : comment;
+		int start = skipSpaces(0, end);
+		if (start == end || (line.charAt(start) == '#' && !hasLineSeparator(start + 1, end))) return;
+		if (scanType(start, end) || scanField(start, end) || scanMethod(start, end)) return;
+		if (entries != null) entries.add(new Entry(SYNTAX_ERROR, lineIndex, null, null, null, null));
+		else parseSyntaxError();
+	}
+
+	// The scanners below accept the same language as the original regular expressions, resolving ambiguities
+	// the same way (names are as long as possible, and type mappings may be followed by a colon):
+	//   type:   \s*(?<old>\S+)\s*->\s*(?<new>\S+?)\s*(?::\s*)?
+	//   field:  \s*(?<type>\S+)\s+(?<old>(?:\S*[\S&&[^)]])|(?:[\S&&[^(]]*[)]))\s*->\s*(?<new>\S+)\s*
+	//   method: \s*(?<ret>\S+)\s+(?<old>\S+)\s*[(]\s*(?<args>(?:[\S&&[^(),]]+(?:\s*,\s*[\S&&[^(),]]+)*)?)\s*[)]
+	//           \s*->\s*(?<new>\S+)\s*
+
+	private boolean scanType(int start, int end) {
+		int nameEnd = skipNonSpaces(start, end);
+		for (int i = nameEnd; i > start; i--) {
+			int arrow = (i == nameEnd) ? skipSpaces(i, end) : i;
+			if (isArrow(arrow, end)) {
+				String newName = scanTypeMapping(arrow + 2, end);
+				if (newName != null) {
+					String name = TypeName.toClassDescriptor(line.substring(start, i));
+					addType(name, TypeName.toClassDescriptor(newName));
+					return true;
+				}
+			}
 		}
-		Matcher field = PATTERN_FIELD.matcher(l);
-		if (field.matches()) {
-			String fieldType = TypeName.toFieldDescriptor(field.group("type"));
-			parseField(fieldType, field.group("old"), field.group("new"));
-			return;
+		return false;
+	}
+
+	private String scanTypeMapping(int start, int end) {
+		start = skipSpaces(start, end);
+		int newNameEnd = skipNonSpaces(start, end);
+		if (newNameEnd == start) return null;
+		int tail = skipSpaces(newNameEnd, end);
+		if (tail == end) {
+			if (newNameEnd - start > 1 && line.charAt(newNameEnd - 1) == ':') newNameEnd--;
+		} else if (line.charAt(tail) != ':' || skipSpaces(tail + 1, end) != end) {
+			return null;
 		}
-		Matcher method = PATTERN_METHOD.matcher(l);
-		if (method.matches()) {
-			String[] parameterTypes = PATTERN_METHOD_PARAMETER_SEPARATOR.split(method.group("args"));
-			if (parameterTypes.length == 1 && parameterTypes[0].isEmpty()) parameterTypes = new String[] {};
-			int length = parameterTypes.length;
-			for (int i = 0; i < length; i++) {
-				parameterTypes[i] = TypeName.toFieldDescriptor(parameterTypes[i]);
+		return line.substring(start, newNameEnd);
+	}
+
+	private boolean scanField(int start, int end) {
+		int typeEnd = skipNonSpaces(start, end);
+		int nameStart = skipSpaces(typeEnd, end);
+		if (nameStart == typeEnd || nameStart == end) return false;
+		int nameEnd = skipNonSpaces(nameStart, end);
+		// Names ending in ')' are only valid if they do not contain '('.
+		int paren = line.indexOf('(', nameStart);
+		if (paren < 0 || paren > nameEnd) paren = nameEnd;
+		if (scanField(start, typeEnd, nameStart, nameEnd, end, false, nameEnd)) return true;
+		return scanField(start, typeEnd, nameStart, nameEnd, end, true, paren);
+	}
+
+	private boolean scanField(int start, int typeEnd, int nameStart, int nameEnd, int end, boolean closingParen,
+			int paren) {
+		for (int i = nameEnd; i > nameStart; i--) {
+			if ((line.charAt(i - 1) == ')') != closingParen || i > paren) continue;
+			int arrow = (i == nameEnd) ? skipSpaces(i, end) : i;
+			if (isArrow(arrow, end)) {
+				String newName = scanMemberMapping(arrow + 2, end);
+				if (newName != null) {
+					String type = TypeName.toFieldDescriptor(line.substring(start, typeEnd));
+					addField(type, line.substring(nameStart, i), newName);
+					return true;
+				}
 			}
-			String returnType = TypeName.toReturnDescriptor(method.group("ret"));
-			parseMethod(parameterTypes, returnType, method.group("old"), method.group("new"));
-			return;
 		}
+		return false;
+	}
+
+	private boolean scanMethod(int start, int end) {
+		int returnTypeEnd = skipNonSpaces(start, end);
+		int nameStart = skipSpaces(returnTypeEnd, end);
+		if (nameStart == returnTypeEnd || nameStart == end) return false;
+		int nameEnd = skipNonSpaces(nameStart, end);
+		for (int i = nameEnd; i > nameStart; i--) {
+			int paren = (i == nameEnd) ? skipSpaces(i, end) : i;
+			if (paren < end && line.charAt(paren) == '(') {
+				String newName = scanMethodMapping(paren + 1, end);
+				if (newName != null) {
+					int length = parameterTypes.size();
+					String[] types = new String[length];
+					for (int j = 0; j < length; j++) types[j] = TypeName.toFieldDescriptor(parameterTypes.get(j));
+					String returnType = TypeName.toReturnDescriptor(line.substring(start, returnTypeEnd));
+					addMethod(types, returnType, line.substring(nameStart, i), newName);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private String scanMethodMapping(int start, int end) {
+		parameterTypes.clear();
+		int i = skipSpaces(start, end);
+		if (i < end && line.charAt(i) != ')') {
+			for (;;) {
+				int typeEnd = skipParameterType(i, end);
+				if (typeEnd == i) return null;
+				parameterTypes.add(line.substring(i, typeEnd));
+				i = skipSpaces(typeEnd, end);
+				if (i == end || line.charAt(i) != ',') break;
+				i = skipSpaces(i + 1, end);
+			}
+		}
+		if (i == end || line.charAt(i) != ')') return null;
+		int arrow = skipSpaces(i + 1, end);
+		return isArrow(arrow, end) ? scanMemberMapping(arrow + 2, end) : null;
+	}
+
+	private String scanMemberMapping(int start, int end) {
+		start = skipSpaces(start, end);
+		int newNameEnd = skipNonSpaces(start, end);
+		if (newNameEnd == start || skipSpaces(newNameEnd, end) != end) return null;
+		return line.substring(start, newNameEnd);
+	}
+
+	private boolean isArrow(int i, int end) {
+		return i + 1 < end && line.charAt(i) == '-' && line.charAt(i + 1) == '>';
+	}
+
+	private int skipSpaces(int i, int end) {
+		while (i < end && isSpace(line.charAt(i))) i++;
+		return i;
+	}
+
+	private int skipNonSpaces(int i, int end) {
+		while (i < end && !isSpace(line.charAt(i))) i++;
+		return i;
+	}
+
+	private int skipParameterType(int i, int end) {
+		for (; i < end; i++) {
+			char c = line.charAt(i);
+			if (isSpace(c) || c == '(' || c == ')' || c == ',') break;
+		}
+		return i;
+	}
+
+	// Comments cannot contain the line separators that are not matched by '.' in regular expressions.
+	private boolean hasLineSeparator(int i, int end) {
+		for (; i < end; i++) {
+			char c = line.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+		}
+		return false;
+	}
+
+	// Matches the '\s' character class of regular expressions.
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private void addType(String name, String newName) {
+		if (entries != null) entries.add(new Entry(TYPE, lineIndex, null, name, newName, null));
+		else parseType(name, newName);
+	}
+
+	private void addField(String type, String name, String newName) {
+		if (entries != null) entries.add(new Entry(FIELD, lineIndex, type, name, newName, null));
+		else parseField(type, name, newName);
+	}
+
+	private void addMethod(String[] parameterTypes, String returnType, String name, String newName) {
+		if (entries != null) entries.add(new Entry(METHOD, lineIndex, returnType, name, newName, parameterTypes));
+		else parseMethod(parameterTypes, returnType, name, newName);
+	}
+
+	private void parseSyntaxError() {
 		log(ERROR, "syntax error");
 		memberMapBuilder = null;
 	}
@@ -173,9 +556,32 @@ public final class MapFileReader {
 	}
 
 	private void log(Logger.Level level, String message) {
-		String file = fileName != null ? ('(' + fileName + ':' + reader.getLineNumber() + "): ") : "";
-		logger.log(level, "map file: " + file + message + ": " + line.trim());
+		if (line == null) {
+			if (deferredMessages == null) deferredMessages = new ArrayList<>();
+			deferredMessages.add(new DeferredMessage(level, lineNumber, message));
+			return;
+		}
+		String location = fileName != null ? ('(' + fileName + ':' + lineNumber + "): ") : "";
+		logger.log(level, "map file: " + location + message + ": " + line.trim());
 		//memberMapBuilder = null;
 	}
 
+	// Logs the messages of lines whose text was not kept, reading the text again from the file.
+	private void logDeferredMessages() throws IOException {
+		if (deferredMessages == null) return;
+		try (InputStream inputStream = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+			LineNumberReader lineReader = new LineNumberReader(reader);
+			for (DeferredMessage message : deferredMessages) {
+				while (lineReader.getLineNumber() < message.lineNumber) {
+					line = lineReader.readLine();
+					if (line == null) throw new IOException("map file changed while reading: '" + file + "'");
+				}
+				lineNumber = message.lineNumber;
+				log(message.level, message.message);
+			}
+		}
+		deferredMessages = null;
+	}
+
 }
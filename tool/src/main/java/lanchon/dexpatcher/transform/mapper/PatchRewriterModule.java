@@ -55,6 +55,14 @@ public class PatchRewriterModule extends WrapperRewriterModule<RewriterModule> {
 		}
 	}
 
+	public static RewriterModule of(RewriterModule wrappedModule, ActionParser actionParser) {
+		if (!actionParser.isDisabled()) {
+			return new PatchRewriterModule(wrappedModule, actionParser);
+		} else {
+			return wrappedModule;
+		}
+	}
+
 	protected final ActionParser actionParser;
 
 	public PatchRewriterModule(RewriterModule wrappedModule, ActionParser actionParser) {
@@ -0,0 +1,194 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.transform.mapper.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lanchon.dexpatcher.core.util.Id;
+import lanchon.dexpatcher.transform.mapper.map.builder.DexMapping;
+
+import org.jf.dexlib2.iface.reference.FieldReference;
+import org.jf.dexlib2.iface.reference.MethodReference;
+
+// A read-only copy of a DexMapping stored in open-addressing tables of ints that index a pool
+// of distinct strings. Lookups hash and compare member ids in place, so they do not build them.
+
+public final class CompactDexMap implements DexMap {
+
+	private final class MemberTable {
+
+		final int[] slots;
+		final int mask;
+		final int[] classes;
+		final int[] ids;
+		final int[] mappings;
+		int size;
+
+		MemberTable(int capacity) {
+			slots = new int[getTableSize(capacity)];
+			mask = slots.length - 1;
+			classes = new int[capacity];
+			ids = new int[capacity];
+			mappings = new int[capacity];
+		}
+
+		void add(int classIndex, String id, String mapping) {
+			int entry = size++;
+			classes[entry] = classIndex;
+			ids[entry] = pool.add(id);
+			mappings[entry] = pool.add(mapping);
+			int slot = getFirstSlot(classIndex, id.hashCode());
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			slots[slot] = entry + 1;
+		}
+
+		int getFirstSlot(int classIndex, int hash) {
+			return mix(hash * 31 + classIndex) & mask;
+		}
+
+	}
+
+	private static final class StringPool {
+
+		final Map<String, Integer> indexes = new HashMap<>();
+		final List<String> strings = new ArrayList<>();
+
+		int add(String s) {
+			Integer index = indexes.get(s);
+			if (index == null) {
+				index = strings.size();
+				indexes.put(s, index);
+				strings.add(s);
+			}
+			return index;
+		}
+
+	}
+
+	private StringPool pool;
+	private final String[] strings;
+
+	private final int[] classSlots;
+	private final int classMask;
+	private final int[] classIds;
+	private final int[] classMappings;
+
+	private final MemberTable fields;
+	private final MemberTable methods;
+
+	public CompactDexMap(DexMapping dexMapping) {
+		Map<String, DexMapping.ClassMapping> classMappingMap = dexMapping.getClassMappings();
+		int classCount = classMappingMap.size();
+		int fieldCount = 0;
+		int methodCount = 0;
+		for (DexMapping.ClassMapping classMapping : classMappingMap.values()) {
+			fieldCount += classMapping.getFieldMappings().size();
+			methodCount += classMapping.getMethodMappings().size();
+		}
+		pool = new StringPool();
+		classSlots = new int[getTableSize(classCount)];
+		classMask = classSlots.length - 1;
+		classIds = new int[classCount];
+		classMappings = new int[classCount];
+		fields = new MemberTable(fieldCount);
+		methods = new MemberTable(methodCount);
+		int classIndex = 0;
+		for (Map.Entry<String, DexMapping.ClassMapping> entry : classMappingMap.entrySet()) {
+			String id = entry.getKey();
+			DexMapping.ClassMapping classMapping = entry.getValue();
+			classIds[classIndex] = pool.add(id);
+			classMappings[classIndex] = pool.add(classMapping.getMapping());
+			int slot = mix(id.hashCode()) & classMask;
+			while (classSlots[slot] != 0) slot = (slot + 1) & classMask;
+			classSlots[slot] = classIndex + 1;
+			for (Map.Entry<String, String> e : classMapping.getFieldMappings().entrySet()) {
+				fields.add(classIndex, e.getKey(), e.getValue());
+			}
+			for (Map.Entry<String, String> e : classMapping.getMethodMappings().entrySet()) {
+				methods.add(classIndex, e.getKey(), e.getValue());
+			}
+			classIndex++;
+		}
+		strings = pool.strings.toArray(new String[0]);
+		pool = null;
+	}
+
+	@Override
+	public String getClassMapping(String descriptor) {
+		int classIndex = findClass(descriptor);
+		return (classIndex >= 0) ? strings[classMappings[classIndex]] : null;
+	}
+
+	@Override
+	public String getFieldMapping(FieldReference field) {
+		int classIndex = findClass(field.getDefiningClass());
+		if (classIndex < 0) return null;
+		String name = field.getName();
+		String type = field.getType();
+		int hash = Id.hashOfField(type, name);
+		MemberTable table = fields;
+		for (int slot = table.getFirstSlot(classIndex, hash);; slot = (slot + 1) & table.mask) {
+			int entry = table.slots[slot] - 1;
+			if (entry < 0) return null;
+			if (table.classes[entry] == classIndex) {
+				String id = strings[table.ids[entry]];
+				if (id.hashCode() == hash && Id.isField(id, type, name)) return strings[table.mappings[entry]];
+			}
+		}
+	}
+
+	@Override
+	public String getMethodMapping(MethodReference method) {
+		int classIndex = findClass(method.getDefiningClass());
+		if (classIndex < 0) return null;
+		String name = method.getName();
+		List<? extends CharSequence> parameterTypes = method.getParameterTypes();
+		String returnType = method.getReturnType();
+		int hash = Id.hashOfMethod(parameterTypes, returnType, name);
+		MemberTable table = methods;
+		for (int slot = table.getFirstSlot(classIndex, hash);; slot = (slot + 1) & table.mask) {
+			int entry = table.slots[slot] - 1;
+			if (entry < 0) return null;
+			if (table.classes[entry] == classIndex) {
+				String id = strings[table.ids[entry]];
+				if (id.hashCode() == hash && Id.isMethod(id, parameterTypes, returnType, name)) {
+					return strings[table.mappings[entry]];
+				}
+			}
+		}
+	}
+
+	private int findClass(String descriptor) {
+		String classId = Id.ofClass(descriptor);
+		int hash = classId.hashCode();
+		for (int slot = mix(hash) & classMask;; slot = (slot + 1) & classMask) {
+			int classIndex = classSlots[slot] - 1;
+			if (classIndex < 0) return -1;
+			String id = strings[classIds[classIndex]];
+			if (id.hashCode() == hash && id.equals(classId)) return classIndex;
+		}
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int getTableSize(int capacity) {
+		int size = 2;
+		while (size < 2 * capacity) size <<= 1;
+		return size;
+	}
+
+}
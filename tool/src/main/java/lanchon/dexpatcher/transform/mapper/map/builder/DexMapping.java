@@ -11,6 +11,7 @@
 package lanchon.dexpatcher.transform.mapper.map.builder;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -22,7 +23,7 @@ import org.jf.dexlib2.iface.reference.MethodReference;
 
 public class DexMapping implements MapBuilder, DexMap {
 
-	protected static class ClassMapping implements MemberMapBuilder {
+	public static class ClassMapping implements MemberMapBuilder {
 
 		protected final String mapping;
 
@@ -52,6 +53,10 @@ public class DexMapping implements MapBuilder, DexMap {
 			return fieldMappings.get(fieldId);
 		}
 
+		public Map<String, String> getFieldMappings() {
+			return Collections.unmodifiableMap(fieldMappings);
+		}
+
 		@Override
 		public void addMethodMapping(String[] parameterTypes, String returnType, String name, String newName) {
 			if (newName == null) throw new NullPointerException("newName");
@@ -67,6 +72,10 @@ public class DexMapping implements MapBuilder, DexMap {
 			return methodMappings.get(methodId);
 		}
 
+		public Map<String, String> getMethodMappings() {
+			return Collections.unmodifiableMap(methodMappings);
+		}
+
 	}
 
 	protected final Map<String, ClassMapping> classMappings = new HashMap<>();
@@ -84,6 +93,10 @@ public class DexMapping implements MapBuilder, DexMap {
 		return newMapping;
 	}
 
+	public Map<String, ClassMapping> getClassMappings() {
+		return Collections.unmodifiableMap(classMappings);
+	}
+
 	@Override
 	public String getClassMapping(String descriptor) {
 		return getClassMappingById(Id.ofClass(descriptor));
@@ -0,0 +1,130 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.transform.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import lanchon.dexpatcher.transform.TransformLogger;
+import lanchon.dexpatcher.transform.util.wrapper.WrapperRewriterModule;
+
+import org.jf.dexlib2.iface.reference.FieldReference;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.immutable.reference.ImmutableFieldReference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.jf.dexlib2.rewriter.Rewriter;
+import org.jf.dexlib2.rewriter.RewriterModule;
+import org.jf.dexlib2.rewriter.Rewriters;
+
+// Memoizes the type, field reference and method reference mappings of a transform stage,
+// so that lazily rewritten views do not recompute them each time they are accessed.
+// The messages logged while computing a mapping are recorded along with it and logged
+// again each time it is reused, so that log messages and their order are not affected.
+
+public class MemoizingRewriterModule extends WrapperRewriterModule<RewriterModule> {
+
+	private static final class Memo<T> {
+		final T value;
+		final TransformLogger.Recording messages;
+		Memo(T value, TransformLogger.Recording messages) {
+			this.value = value;
+			this.messages = messages.isEmpty() ? null : messages;
+		}
+		T replay() {
+			if (messages != null) messages.replay();
+			return value;
+		}
+	}
+
+	private final TypeRewriteCache<Memo<String>> typeCache;
+	private final ConcurrentHashMap<FieldReference, Memo<FieldReference>> fieldReferenceMap =
+			new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<MethodReference, Memo<MethodReference>> methodReferenceMap =
+			new ConcurrentHashMap<>();
+
+	public MemoizingRewriterModule(RewriterModule wrappedModule, boolean countStats) {
+		super(wrappedModule);
+		typeCache = new TypeRewriteCache<>(countStats);
+	}
+
+	public TypeRewriteCache<?> getTypeCache() {
+		return typeCache;
+	}
+
+	@Override
+	public Rewriter<String> getTypeRewriter(Rewriters rewriters) {
+		final Rewriter<String> wrappedTypeRewriter = wrappedModule.getTypeRewriter(rewriters);
+		return new Rewriter<String>() {
+			@Override
+			public String rewrite(String type) {
+				Memo<String> memo = typeCache.get(type);
+				if (memo != null) return memo.replay();
+				TransformLogger.Recording recording = TransformLogger.startRecording();
+				String rewrittenType;
+				try {
+					rewrittenType = wrappedTypeRewriter.rewrite(type);
+				} finally {
+					TransformLogger.stopRecording(recording);
+				}
+				typeCache.put(type, new Memo<>(rewrittenType, recording));
+				return rewrittenType;
+			}
+		};
+	}
+
+	@Override
+	public Rewriter<FieldReference> getFieldReferenceRewriter(Rewriters rewriters) {
+		final Rewriter<FieldReference> wrappedFieldReferenceRewriter =
+				wrappedModule.getFieldReferenceRewriter(rewriters);
+		return new Rewriter<FieldReference>() {
+			@Override
+			public FieldReference rewrite(FieldReference field) {
+				// NOTE: Lookups use the field itself as key, copies are only made for new entries.
+				Memo<FieldReference> memo = fieldReferenceMap.get(field);
+				if (memo != null) return memo.replay();
+				FieldReference key = ImmutableFieldReference.of(field);
+				TransformLogger.Recording recording = TransformLogger.startRecording();
+				FieldReference rewrittenField;
+				try {
+					rewrittenField = ImmutableFieldReference.of(wrappedFieldReferenceRewriter.rewrite(key));
+				} finally {
+					TransformLogger.stopRecording(recording);
+				}
+				fieldReferenceMap.put(key, new Memo<>(rewrittenField, recording));
+				return rewrittenField;
+			}
+		};
+	}
+
+	@Override
+	public Rewriter<MethodReference> getMethodReferenceRewriter(Rewriters rewriters) {
+		final Rewriter<MethodReference> wrappedMethodReferenceRewriter =
+				wrappedModule.getMethodReferenceRewriter(rewriters);
+		return new Rewriter<MethodReference>() {
+			@Override
+			public MethodReference rewrite(MethodReference method) {
+				// NOTE: Lookups use the method itself as key, copies are only made for new entries.
+				Memo<MethodReference> memo = methodReferenceMap.get(method);
+				if (memo != null) return memo.replay();
+				MethodReference key = ImmutableMethodReference.of(method);
+				TransformLogger.Recording recording = TransformLogger.startRecording();
+				MethodReference rewrittenMethod;
+				try {
+					rewrittenMethod = ImmutableMethodReference.of(wrappedMethodReferenceRewriter.rewrite(key));
+				} finally {
+					TransformLogger.stopRecording(recording);
+				}
+				methodReferenceMap.put(key, new Memo<>(rewrittenMethod, recording));
+				return rewrittenMethod;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.transform.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import lanchon.dexpatcher.transform.TransformLogger;
+
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+
+// Visits contiguous chunks of class definitions concurrently. Messages logged
+// while visiting each chunk are buffered and then flushed in chunk order, so
+// that the log output matches that of a single-threaded visit.
+
+public class ParallelDexVisitor {
+
+	private static final int CHUNKS_PER_JOB = 4;
+
+	private final DexVisitor visitor;
+	private final int jobs;
+	private final TransformLogger logger;
+
+	public ParallelDexVisitor(DexVisitor visitor, int jobs, TransformLogger logger) {
+		this.visitor = visitor;
+		this.jobs = (jobs > 0) ? jobs : Runtime.getRuntime().availableProcessors();
+		this.logger = logger;
+	}
+
+	public void visitDexFile(DexFile dexFile) {
+		dexFile.getOpcodes();
+		visitClassDefs(dexFile.getClasses());
+	}
+
+	public void visitClassDefs(Iterable<? extends ClassDef> classDefs) {
+		boolean sync = logger.getSync();
+		logger.setSync(true);
+		try {
+			visitClassDefsWithSync(classDefs);
+		} finally {
+			logger.setSync(sync);
+		}
+	}
+
+	private void visitClassDefsWithSync(Iterable<? extends ClassDef> classDefs) {
+
+		// Obtaining class definitions can log messages too. Keep track of them per class
+		// so that they can be logged right before visiting the corresponding class.
+		final List<ClassDef> classDefList = new ArrayList<>();
+		final List<Integer> classMarks = new ArrayList<>();
+		final TransformLogger.Buffer classBuffer = logger.startBuffering();
+		try {
+			classMarks.add(0);
+			for (ClassDef classDef : classDefs) {
+				classDefList.add(classDef);
+				classMarks.add(classBuffer.size());
+			}
+		} finally {
+			logger.stopBuffering();
+		}
+
+		int size = classDefList.size();
+		int chunks = Math.min(size, jobs * CHUNKS_PER_JOB);
+		final TransformLogger.Buffer[] buffers = new TransformLogger.Buffer[chunks];
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+		ForkJoinPool pool = new ForkJoinPool(jobs);
+		try {
+			for (int i = 0; i < chunks; i++) {
+				final int chunk = i;
+				final int start = (int) ((long) size * i / chunks);
+				final int end = (int) ((long) size * (i + 1) / chunks);
+				tasks.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						buffers[chunk] = logger.startBuffering();
+						try {
+							for (int j = start; j < end; j++) {
+								logger.logBuffered(classBuffer, classMarks.get(j), classMarks.get(j + 1));
+								visitor.visitClassDef(classDefList.get(j));
+							}
+						} finally {
+							logger.stopBuffering();
+						}
+					}
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks) task.join();
+		} finally {
+			pool.shutdown();
+		}
+		for (TransformLogger.Buffer buffer : buffers) logger.flushBuffer(buffer);
+
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * DexPatcher - Copyright 2015-2020 Rodrigo Balerdi
+ * (GNU General Public License version 3 or later)
+ *
+ * DexPatcher is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ */
+
+package lanchon.dexpatcher.transform.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A bounded, thread-safe cache of values computed from type descriptors, such as their
+// rewrites. Lookups first try a small direct-mapped table keyed by descriptor identity
+// (descriptors obtained from a dex file are typically the same string instances each time)
+// and then fall back to equality. Hits and misses are only counted if requested.
+
+public class TypeRewriteCache<V> {
+
+	public static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+	private static final int IDENTITY_SLOTS = 1 << 10;
+
+	private static final class Entry<V> {
+		final String type;
+		final V value;
+		Entry(String type, V value) {
+			this.type = type;
+			this.value = value;
+		}
+	}
+
+	// NOTE: Races on identity slots are benign because entries are immutable.
+	private final Entry<?>[] identitySlots = new Entry<?>[IDENTITY_SLOTS];
+	private final ConcurrentHashMap<String, V> map = new ConcurrentHashMap<>();
+	private final int maxSize;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	public TypeRewriteCache(boolean countStats) {
+		this(DEFAULT_MAX_SIZE, countStats);
+	}
+
+	public TypeRewriteCache(int maxSize, boolean countStats) {
+		this.maxSize = maxSize;
+		hits = countStats ? new AtomicLong() : null;
+		misses = countStats ? new AtomicLong() : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(String type) {
+		int slot = System.identityHashCode(type) & (IDENTITY_SLOTS - 1);
+		Entry<V> entry = (Entry<V>) identitySlots[slot];
+		if (entry != null && entry.type == type) {
+			if (hits != null) hits.incrementAndGet();
+			return entry.value;
+		}
+		V value = map.get(type);
+		if (value != null) {
+			identitySlots[slot] = new Entry<>(type, value);
+			if (hits != null) hits.incrementAndGet();
+			return value;
+		}
+		if (misses != null) misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(String type, V value) {
+		if (map.size() < maxSize) map.put(type, value);
+		int slot = System.identityHashCode(type) & (IDENTITY_SLOTS - 1);
+		identitySlots[slot] = new Entry<>(type, value);
+	}
+
+	public long getHitCount() {
+		return (hits != null) ? hits.get() : 0;
+	}
+
+	public long getMissCount() {
+		return (misses != null) ? misses.get() : 0;
+	}
+
+}